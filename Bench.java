@@ -0,0 +1,265 @@
+
+// A small benchmark harness (no external libraries)
+// Measuring Java code naively gives wrong numbers: the first runs are interpreted, then the
+// JIT compiles the hot code, and unused results can be removed as dead code. So:
+//   warm up    - run the body a few times before measuring so the JIT has compiled it
+//   iterate    - measure several iterations and report mean / min / max
+//   consume    - hand results to Bench.consume() so the JIT cannot drop the work
+// This harness runs everything in one JVM, so JIT profiles of earlier benchmarks leak into
+// later ones. For numbers to publish use the JMH module in jmh/ (gradle :jmh:jmh), which
+// forks a fresh JVM per benchmark; this class stays for quick runs from a main method.
+// Besides time it reports the bytes allocated per operation (from the per-thread allocation
+// counters of com.sun.management.ThreadMXBean) and the GC runs during the measurement,
+// which is what JMH's "-prof gc" shows. Results can be written as JSON to compare runs.
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+public class Bench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // consume() compares against `guard` (only read, so threads share its cache line without
+    // contention) and writes `sink` only on a match, which never happens. Writing a shared
+    // field on every call would make all threads of runThreads fight over one cache line.
+    private static volatile Object guard = new Object();
+    private static Object sink;
+
+    private final int warmupIterations;
+    private final int measureIterations;
+    private final List<Result> results = new ArrayList<>();
+
+    public Bench(int warmupIterations, int measureIterations) {
+        if (warmupIterations < 0 || measureIterations <= 0) {
+            throw new IllegalArgumentException("warmupIterations >= 0 and measureIterations > 0 required");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measureIterations = measureIterations;
+    }
+
+    // Keeps a result alive so the JIT cannot remove the code that produced it
+    public static void consume(Object value) {
+        if (value == guard) {
+            sink = value;
+        }
+    }
+
+    public static final class Result {
+        public final String name;
+        public final Map<String, Object> params;
+        public final long opsPerIteration;
+        public final double meanNsPerOp;
+        public final double minNsPerOp;
+        public final double maxNsPerOp;
+        public final double bytesPerOp;
+        public final double allocMbPerSec;
+        public final long gcCount;
+        public final long gcMillis;
+
+        Result(String name, Map<String, Object> params, long opsPerIteration, double[] nsPerOp,
+               double bytesPerOp, double allocMbPerSec, long gcCount, long gcMillis) {
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = 0;
+            for (double ns : nsPerOp) {
+                sum += ns;
+                min = Math.min(min, ns);
+                max = Math.max(max, ns);
+            }
+            this.name = name;
+            this.params = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+            this.opsPerIteration = opsPerIteration;
+            this.meanNsPerOp = sum / nsPerOp.length;
+            this.minNsPerOp = min;
+            this.maxNsPerOp = max;
+            this.bytesPerOp = bytesPerOp;
+            this.allocMbPerSec = allocMbPerSec;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public double opsPerSecond() {
+            return 1e9 / meanNsPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %-50s %12.2f ns/op %14.0f ops/s %10.1f B/op %9.1f MB/s alloc %4d gc",
+                name, params, meanNsPerOp, opsPerSecond(), bytesPerOp, allocMbPerSec, gcCount);
+        }
+    }
+
+    // Runs body on the calling thread; one call performs opsPerCall operations.
+    // Allocation is summed over all live threads, so work done by parallel streams in the
+    // common pool is counted too (threads that die during the measurement are missed).
+    public Result run(String name, Map<String, Object> params, long opsPerCall, Runnable body) {
+        for (int i = 0; i < warmupIterations; i++) {
+            body.run();
+        }
+        double[] nsPerOp = new double[measureIterations];
+        long[] gcBefore = gcTotals();
+        long bytesBefore = allocatedBytesAllThreads();
+        long totalNanos = 0;
+        for (int i = 0; i < measureIterations; i++) {
+            long start = System.nanoTime();
+            body.run();
+            long nanos = System.nanoTime() - start;
+            totalNanos += nanos;
+            nsPerOp[i] = (double) nanos / opsPerCall;
+        }
+        long bytes = allocatedBytesAllThreads() - bytesBefore;
+        long[] gcAfter = gcTotals();
+        return record(name, params, opsPerCall, nsPerOp, bytes, totalNanos, gcBefore, gcAfter);
+    }
+
+    // Runs body(threadIndex) on `threads` threads at once, each performing opsPerThread operations.
+    // ns/op is wall time divided by all operations of all threads, so it shows throughput.
+    public Result runThreads(String name, Map<String, Object> params, int threads, long opsPerThread, IntConsumer body)
+            throws InterruptedException {
+        for (int i = 0; i < warmupIterations; i++) {
+            runOnce(threads, body, new AtomicLong());
+        }
+        double[] nsPerOp = new double[measureIterations];
+        long[] gcBefore = gcTotals();
+        AtomicLong bytes = new AtomicLong();
+        long totalNanos = 0;
+        for (int i = 0; i < measureIterations; i++) {
+            long nanos = runOnce(threads, body, bytes);
+            totalNanos += nanos;
+            nsPerOp[i] = (double) nanos / (opsPerThread * threads);
+        }
+        long[] gcAfter = gcTotals();
+        return record(name, params, opsPerThread * threads, nsPerOp, bytes.get(), totalNanos, gcBefore, gcAfter);
+    }
+
+    private static long runOnce(int threads, IntConsumer body, AtomicLong bytes) throws InterruptedException {
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        Throwable[] failure = new Throwable[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    long before = THREADS.getCurrentThreadAllocatedBytes();
+                    body.accept(index);
+                    bytes.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - before);
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        try {
+            start.await();
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Benchmark thread failed to start", e);
+        }
+        long begin = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new IllegalStateException("Benchmark thread failed", failure[0]);
+            }
+        }
+        return nanos;
+    }
+
+    private Result record(String name, Map<String, Object> params, long opsPerIteration, double[] nsPerOp,
+                          long bytes, long totalNanos, long[] gcBefore, long[] gcAfter) {
+        long ops = opsPerIteration * measureIterations;
+        Result result = new Result(name, params, opsPerIteration, nsPerOp, (double) bytes / ops,
+            bytes * 1e9 / Math.max(totalNanos, 1) / (1024 * 1024), gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    private static long allocatedBytesAllThreads() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return new long[] {count, millis};
+    }
+
+    public List<Result> results() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public void writeJson(Path path) throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            json.append("  {\"benchmark\": ").append(quote(r.name)).append(", \"params\": {");
+            int p = 0;
+            for (Map.Entry<String, Object> param : r.params.entrySet()) {
+                json.append(p++ == 0 ? "" : ", ").append(quote(param.getKey())).append(": ");
+                json.append(param.getValue() instanceof Number ? param.getValue().toString() : quote(String.valueOf(param.getValue())));
+            }
+            json.append("}, \"opsPerIteration\": ").append(r.opsPerIteration)
+                .append(", \"meanNsPerOp\": ").append(r.meanNsPerOp)
+                .append(", \"minNsPerOp\": ").append(r.minNsPerOp)
+                .append(", \"maxNsPerOp\": ").append(r.maxNsPerOp)
+                .append(", \"opsPerSecond\": ").append(r.opsPerSecond())
+                .append(", \"bytesPerOp\": ").append(r.bytesPerOp)
+                .append(", \"allocMbPerSec\": ").append(r.allocMbPerSec)
+                .append(", \"gcCount\": ").append(r.gcCount)
+                .append(", \"gcMillis\": ").append(r.gcMillis)
+                .append(i + 1 < results.size() ? "},\n" : "}\n");
+        }
+        json.append("]\n");
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // Convenience for building parameter maps: params("size", 1000, "mode", "loop")
+    public static Map<String, Object> params(Object... keysAndValues) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            params.put(String.valueOf(keysAndValues[i]), keysAndValues[i + 1]);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,569 @@
+
+// Bounded, thread-safe cache built on the ThreadSafeCache idea from Notes.Java
+// ThreadSafeCache wraps a ConcurrentHashMap and never removes anything, so it grows until the
+// heap is full. BoundedCache keeps the same put/get/containsKey/remove API and adds:
+//   size bound    - a maximum total weight (or entry count); the least valuable entries are evicted
+//   SLRU eviction - segmented LRU: new entries start in a "probation" segment, an entry that is
+//                   read again moves to the "protected" segment (80% of the capacity). One-hit
+//                   wonders are evicted from probation first, frequently used entries survive scans.
+//   lock-free get - reads only touch the ConcurrentHashMap. The LRU bookkeeping of a read is
+//                   recorded in a small lossy buffer and applied later by whoever gets the lock
+//                   (losing a few of these hints only makes the LRU order a bit less exact).
+//   expiry        - expireAfterWrite: entries older than this are treated as missing
+//   refresh       - refreshAfterWrite: an entry older than this is reloaded in the background
+//                   on the next read, while readers keep getting the old value
+//   loading       - get(key, loader) runs the loader at most once per key at a time; other threads
+//                   asking for the same key wait for that load instead of starting their own.
+//                   Background refreshes are registered in the same in-flight map.
+// Every write installs a new Node, so "is this still the entry I loaded for" is an identity
+// check: a refresh only replaces the exact node it started from (data.replace(key, old, new)),
+// and a put() that happened meanwhile wins.
+//   stats         - hit, miss, eviction and load counters plus a load latency histogram
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntBiFunction;
+
+public class BoundedCache<K, V> {
+    // powers of two; draining every READ_BUFFER_SIZE reads costs at most one list move per read
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int DRAIN_EVERY_READS = 64;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+    private final long maximumWeight;
+    private final long protectedMaximum;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+    private final Executor executor;
+    private final LongSupplier ticker;
+
+    // guarded by evictionLock
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Node<K, V> probation = Node.sentinel();
+    private final Node<K, V> protectedSegment = Node.sentinel();
+    private long totalWeight;
+    private long protectedWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    // bucket i counts loads that took [2^i, 2^(i+1)) nanoseconds
+    private final LongAdder[] loadLatency = new LongAdder[64];
+
+    static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long writeNanos;
+
+        // guarded by evictionLock
+        int weight;
+        boolean inProtected;
+        boolean linked;
+        boolean retired;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long writeNanos) {
+            this.key = key;
+            this.value = value;
+            this.writeNanos = writeNanos;
+        }
+
+        static <K, V> Node<K, V> sentinel() {
+            Node<K, V> head = new Node<>(null, null, 0);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+    }
+
+    private BoundedCache(Builder<K, V> builder) {
+        this.maximumWeight = builder.maximumWeight;
+        this.protectedMaximum = (long) (builder.maximumWeight * 0.8);
+        this.weigher = builder.weigher;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.executor = builder.executor;
+        this.ticker = builder.ticker;
+        for (int i = 0; i < loadLatency.length; i++) {
+            loadLatency[i] = new LongAdder();
+        }
+    }
+
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    public static final class Builder<K, V> {
+        private long maximumWeight = -1;
+        private ToIntBiFunction<? super K, ? super V> weigher = (k, v) -> 1;
+        private long expireAfterWriteNanos;
+        private long refreshAfterWriteNanos;
+        private Executor executor = ForkJoinPool.commonPool();
+        private LongSupplier ticker = System::nanoTime;
+
+        public Builder<K, V> maximumSize(long maximumSize) {
+            this.maximumWeight = maximumSize;
+            this.weigher = (k, v) -> 1;
+            return this;
+        }
+
+        public Builder<K, V> maximumWeight(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        public Builder<K, V> expireAfterWrite(Duration duration) {
+            this.expireAfterWriteNanos = duration.toNanos();
+            return this;
+        }
+
+        public Builder<K, V> refreshAfterWrite(Duration duration) {
+            this.refreshAfterWriteNanos = duration.toNanos();
+            return this;
+        }
+
+        // runs background refreshes, defaults to the common ForkJoinPool
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        // time source in nanoseconds, replaceable in tests
+        public Builder<K, V> ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public BoundedCache<K, V> build() {
+            if (maximumWeight <= 0) {
+                throw new IllegalStateException("maximumSize or maximumWeight must be set to a positive value");
+            }
+            return new BoundedCache<>(this);
+        }
+    }
+
+    // ---- ThreadSafeCache API ----
+
+    public V get(K key) {
+        return getIfPresent(key, null);
+    }
+
+    public boolean containsKey(K key) {
+        Node<K, V> node = data.get(key);
+        return node != null && (expireAfterWriteNanos == 0 || !isExpired(node, ticker.getAsLong()));
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("BoundedCache does not accept null keys or values");
+        }
+        Node<K, V> node = new Node<>(key, value, ticker.getAsLong());
+        install(data.put(key, node), node);
+    }
+
+    // Links a node that was just put into data, retiring the node it replaced (if any)
+    private void install(Node<K, V> replaced, Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            // retired already: a later write replaced this node before we got the lock
+            if (!node.retired) {
+                node.weight = weigher.applyAsInt(node.key, node.value);
+                if (replaced != null && replaced.linked) {
+                    // take over the SLRU position of the entry it replaces
+                    node.prev = replaced.prev;
+                    node.next = replaced.next;
+                    node.prev.next = node;
+                    node.next.prev = node;
+                    node.linked = true;
+                    node.inProtected = replaced.inProtected;
+                    replaced.prev = null;
+                    replaced.next = null;
+                    replaced.linked = false;
+                    totalWeight += node.weight - replaced.weight;
+                    if (node.inProtected) {
+                        protectedWeight += node.weight - replaced.weight;
+                    }
+                } else {
+                    linkLast(probation, node);
+                    totalWeight += node.weight;
+                }
+            }
+            if (replaced != null) {
+                retire(replaced);
+            }
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        Node<K, V> node = data.remove(key);
+        if (node != null) {
+            evictionLock.lock();
+            try {
+                retire(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // ---- loading ----
+
+    // Returns the cached value or loads it. Concurrent calls for the same missing key share one load.
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key, loader);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw propagate(e.getCause());
+            }
+        }
+        try {
+            // a load that finished just before we registered ours has already been put
+            Node<K, V> node = data.get(key);
+            if (node != null && !isExpired(node, ticker.getAsLong())) {
+                mine.complete(node.value);
+                return node.value;
+            }
+            value = load(key, loader);
+            put(key, value);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private V load(K key, Function<? super K, ? extends V> loader) {
+        long start = System.nanoTime();
+        try {
+            V value = loader.apply(key);
+            if (value == null) {
+                throw new IllegalStateException("Loader returned null for key " + key);
+            }
+            loadSuccesses.increment();
+            return value;
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            totalLoadNanos.add(nanos);
+            loadLatency[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    // ---- read path ----
+
+    private V getIfPresent(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        long now = expireAfterWriteNanos > 0 || refreshAfterWriteNanos > 0 ? ticker.getAsLong() : 0;
+        if (isExpired(node, now)) {
+            misses.increment();
+            if (data.remove(key, node)) {
+                evictionLock.lock();
+                try {
+                    retire(node);
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        recordRead(node);
+        if (loader != null && refreshAfterWriteNanos > 0 && now - node.writeNanos >= refreshAfterWriteNanos) {
+            refresh(node, loader);
+        }
+        return node.value;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return expireAfterWriteNanos > 0 && now - node.writeNanos >= expireAfterWriteNanos;
+    }
+
+    // The refresh is an in-flight load like any other: get(key, loader) on a miss while it runs
+    // waits for it instead of loading the key a second time.
+    private void refresh(Node<K, V> node, Function<? super K, ? extends V> loader) {
+        K key = node.key;
+        if (loading.containsKey(key)) {
+            return; // a load or refresh of this key is already running
+        }
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, mine) != null) {
+            return;
+        }
+        Runnable task = () -> {
+            try {
+                V value = load(key, loader);
+                Node<K, V> fresh = new Node<>(key, value, ticker.getAsLong());
+                // only if the entry is still the one being refreshed; a newer put() or a removal wins
+                if (data.replace(key, node, fresh)) {
+                    install(node, fresh);
+                }
+                mine.complete(value);
+            } catch (RuntimeException | Error e) {
+                // readers keep the old value, the next read after refreshAfterWrite tries again
+                mine.completeExceptionally(e);
+            } finally {
+                loading.remove(key, mine);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            mine.completeExceptionally(e);
+            loading.remove(key, mine);
+        }
+    }
+
+    private void recordRead(Node<K, V> node) {
+        int random = ThreadLocalRandom.current().nextInt();
+        readBuffer.lazySet(random & (READ_BUFFER_SIZE - 1), node);
+        if ((random >>> 16 & (DRAIN_EVERY_READS - 1)) == 0 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // ---- SLRU bookkeeping, all under evictionLock ----
+
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node<K, V> node = readBuffer.getAndSet(i, null);
+            if (node != null && node.linked) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.next == protectedSegment) {
+            return; // already the most recently used entry
+        }
+        unlink(node);
+        if (!node.inProtected) {
+            node.inProtected = true;
+            protectedWeight += node.weight;
+        }
+        linkLast(protectedSegment, node);
+        // protected segment too big: its least recently used entries drop back to probation
+        while (protectedWeight > protectedMaximum && protectedSegment.next != protectedSegment) {
+            Node<K, V> demoted = protectedSegment.next;
+            unlink(demoted);
+            demoted.inProtected = false;
+            protectedWeight -= demoted.weight;
+            linkLast(probation, demoted);
+        }
+    }
+
+    private void evict() {
+        while (totalWeight > maximumWeight) {
+            Node<K, V> victim = probation.next != probation ? probation.next : protectedSegment.next;
+            if (victim == protectedSegment) {
+                break;
+            }
+            data.remove(victim.key, victim);
+            retire(victim);
+            evictions.increment();
+        }
+    }
+
+    private void retire(Node<K, V> node) {
+        if (node.linked) {
+            unlink(node);
+            totalWeight -= node.weight;
+            if (node.inProtected) {
+                protectedWeight -= node.weight;
+            }
+        }
+        node.retired = true;
+    }
+
+    private static <K, V> void linkLast(Node<K, V> head, Node<K, V> node) {
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+        node.linked = true;
+    }
+
+    private static <K, V> void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.linked = false;
+    }
+
+    // ---- size and statistics ----
+
+    public long size() {
+        return data.size();
+    }
+
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        long[] histogram = new long[loadLatency.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = loadLatency[i].sum();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), loadSuccesses.sum(), loadFailures.sum(),
+            totalLoadNanos.sum(), histogram);
+    }
+
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long loadSuccesses;
+        public final long loadFailures;
+        public final long totalLoadNanos;
+        private final long[] loadLatencyHistogram;
+
+        Stats(long hits, long misses, long evictions, long loadSuccesses, long loadFailures,
+              long totalLoadNanos, long[] loadLatencyHistogram) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.loadSuccesses = loadSuccesses;
+            this.loadFailures = loadFailures;
+            this.totalLoadNanos = totalLoadNanos;
+            this.loadLatencyHistogram = loadLatencyHistogram;
+        }
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        // count of loads per power-of-two bucket: index i = [2^i, 2^(i+1)) ns
+        public long[] loadLatencyHistogram() {
+            return loadLatencyHistogram.clone();
+        }
+
+        // upper bound of the bucket holding the given percentile of load times, in ns
+        public long loadLatencyPercentile(double percentile) {
+            long loads = Arrays.stream(loadLatencyHistogram).sum();
+            long rank = (long) Math.ceil(percentile / 100 * loads);
+            long seen = 0;
+            for (int i = 0; i < loadLatencyHistogram.length; i++) {
+                seen += loadLatencyHistogram[i];
+                if (seen >= rank && seen > 0) {
+                    return (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d loads=%d loadFailures=%d avgLoad=%dns p99Load<=%dns",
+                hits, misses, hitRate(), evictions, loadSuccesses, loadFailures,
+                loadSuccesses + loadFailures == 0 ? 0 : totalLoadNanos / (loadSuccesses + loadFailures),
+                loadLatencyPercentile(99));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        BoundedCache<String, String> cache = BoundedCache.<String, String>builder()
+            .maximumSize(100)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .refreshAfterWrite(Duration.ofMinutes(1))
+            .build();
+
+        Runnable writerTask = () -> {
+            for (int i = 0; i < 1000; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+        };
+        Runnable readerTask = () -> {
+            for (int i = 0; i < 1000; i++) {
+                cache.get("key" + (i % 50));
+            }
+        };
+        Thread writer = new Thread(writerTask);
+        Thread reader = new Thread(readerTask);
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        System.out.println("size after 1000 puts: " + cache.size()); // 100, the rest was evicted
+
+        // 8 threads ask for the same missing key, the loader runs once
+        Map<String, Integer> loads = new ConcurrentHashMap<>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> cache.get("expensive", key -> {
+                loads.merge(key, 1, Integer::sum);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "loaded";
+            }));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("loader calls for 8 concurrent gets: " + loads.get("expensive")); // 1
+        System.out.println(cache.stats());
+    }
+}
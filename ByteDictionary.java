@@ -0,0 +1,82 @@
+
+// Dictionary from raw bytes to dense int codes (0, 1, 2, ...)
+// Parsers read text as bytes. Turning every field into a String just to look it up in a
+// HashMap allocates one String per row. This table hashes and compares the bytes in place,
+// so looking up a value that was seen before allocates nothing. Only a new value is copied.
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ByteDictionary {
+    private byte[][] keys = new byte[16][];
+    private int[] hashes = new int[16];
+    private int[] codes = new int[16];
+    private String[] values = new String[8];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public String value(int code) {
+        return values[code];
+    }
+
+    // Copy of all values, index = code
+    public String[] values() {
+        return Arrays.copyOf(values, size);
+    }
+
+    // Returns the code of bytes[from, to), adding it to the dictionary if it is new
+    public int code(byte[] bytes, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int mask = keys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, bytes, from, to)) {
+                return codes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(slot, hash, Arrays.copyOfRange(bytes, from, to));
+    }
+
+    private int add(int slot, int hash, byte[] key) {
+        int code = size++;
+        keys[slot] = key;
+        hashes[slot] = hash;
+        codes[slot] = code;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, code * 2);
+        }
+        values[code] = new String(key, StandardCharsets.UTF_8);
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    private void rehash() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCodes = codes;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[keys.length];
+        codes = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+
+// BoundedCache against the plain ThreadSafeCache wrapper from Notes.Java
+// Keys are drawn from a Zipfian distribution: a few keys are very hot and most are rarely
+// used, which is what real cache traffic looks like. Each thread replays its own precomputed
+// key sequence so the random generator is not part of the measurement.
+//   read%  - share of operations that are get(); the rest are put()
+//   a read miss on the bounded cache is filled with put() (cache-aside)
+// The plain wrapper never evicts, so its hit rate is 100% once warm; it is the speed
+// ceiling, BoundedCache pays for its bookkeeping and in return keeps a fixed size.
+
+// Usage: java CacheBenchmark [keys] [capacity] [threads] [output.json]
+//   java CacheBenchmark 100000 10000 1,2,4,8 cache-bench.json
+// Under JMH (forked JVMs, per-thread blackholes): gradle :jmh:jmh -PjmhArgs='CacheJmhBenchmark -t 4'
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+public class CacheBenchmark {
+    private static final int OPS_PER_THREAD = 1 << 20;
+
+    // ThreadSafeCache from Notes.Java, unchanged
+    static final class ThreadSafeCache<K, V> {
+        private final ConcurrentHashMap<K, V> cache = new ConcurrentHashMap<>();
+
+        public void put(K key, V value) {
+            cache.put(key, value);
+        }
+
+        public V get(K key) {
+            return cache.get(key);
+        }
+
+        public boolean containsKey(K key) {
+            return cache.containsKey(key);
+        }
+
+        public void remove(K key) {
+            cache.remove(key);
+        }
+    }
+
+    // Zipfian key indexes: key i is drawn with probability proportional to 1 / (i + 1)^exponent
+    static int[] zipfian(int keys, double exponent, int count, long seed) {
+        double[] cdf = new double[keys];
+        double total = 0;
+        for (int i = 0; i < keys; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = total;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] sequence = new int[count];
+        for (int i = 0; i < count; i++) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * total);
+            sequence[i] = Math.min(index < 0 ? -index - 1 : index, keys - 1);
+        }
+        return sequence;
+    }
+
+    static String[] keyNames(int keys) {
+        String[] keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "key" + i;
+        }
+        return keyNames;
+    }
+
+    // "get" and "put" on one shared cache as functions of a key index, for jmh.CacheJmhBenchmark.
+    // A get miss on BoundedCache is filled with put (cache-aside), like in main.
+    static Map<String, IntFunction<Object>> operations(String cache, int keys, int capacity) {
+        String[] keyNames = keyNames(keys);
+        if (cache.equals("ThreadSafeCache")) {
+            ThreadSafeCache<String, String> plain = new ThreadSafeCache<>();
+            for (String key : keyNames) {
+                plain.put(key, key);
+            }
+            return Map.of(
+                "get", i -> plain.get(keyNames[i]),
+                "put", i -> {
+                    plain.put(keyNames[i], keyNames[i]);
+                    return null;
+                });
+        }
+        if (!cache.equals("BoundedCache")) {
+            throw new IllegalArgumentException("Unknown cache " + cache);
+        }
+        BoundedCache<String, String> bounded = BoundedCache.<String, String>builder()
+            .maximumSize(capacity)
+            .build();
+        return Map.of(
+            "get", i -> {
+                String value = bounded.get(keyNames[i]);
+                if (value == null) {
+                    bounded.put(keyNames[i], keyNames[i]);
+                }
+                return value;
+            },
+            "put", i -> {
+                bounded.put(keyNames[i], keyNames[i]);
+                return null;
+            });
+    }
+
+    public static void main(String a[]) throws IOException, InterruptedException {
+        int keys = a.length > 0 ? Integer.parseInt(a[0]) : 100_000;
+        int capacity = a.length > 1 ? Integer.parseInt(a[1]) : keys / 10;
+        int[] threadCounts = a.length > 2
+            ? Arrays.stream(a[2].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[] {1, 2, 4, Runtime.getRuntime().availableProcessors()};
+        int[] readPercents = {100, 95, 75};
+
+        String[] keyNames = keyNames(keys);
+        int maxThreads = Arrays.stream(threadCounts).max().getAsInt();
+        int[][] sequences = new int[maxThreads][];
+        for (int t = 0; t < maxThreads; t++) {
+            sequences[t] = zipfian(keys, 0.99, OPS_PER_THREAD, 42 + t);
+        }
+
+        Bench bench = new Bench(2, 5);
+        for (int readPercent : readPercents) {
+            for (int threads : threadCounts) {
+                Map<String, Object> params = Bench.params("keys", keys, "capacity", capacity,
+                    "readPercent", readPercent, "threads", threads);
+
+                ThreadSafeCache<String, String> plain = new ThreadSafeCache<>();
+                for (String key : keyNames) {
+                    plain.put(key, key);
+                }
+                bench.runThreads("ThreadSafeCache", params, threads, OPS_PER_THREAD, t -> {
+                    int[] sequence = sequences[t];
+                    for (int i = 0; i < sequence.length; i++) {
+                        String key = keyNames[sequence[i]];
+                        if (i % 100 < readPercent) {
+                            Bench.consume(plain.get(key));
+                        } else {
+                            plain.put(key, key);
+                        }
+                    }
+                });
+
+                BoundedCache<String, String> bounded = BoundedCache.<String, String>builder()
+                    .maximumSize(capacity)
+                    .build();
+                bench.runThreads("BoundedCache", params, threads, OPS_PER_THREAD, t -> {
+                    int[] sequence = sequences[t];
+                    for (int i = 0; i < sequence.length; i++) {
+                        String key = keyNames[sequence[i]];
+                        if (i % 100 < readPercent) {
+                            String value = bounded.get(key);
+                            if (value == null) {
+                                bounded.put(key, key);
+                            }
+                            Bench.consume(value);
+                        } else {
+                            bounded.put(key, key);
+                        }
+                    }
+                });
+                BoundedCache.Stats stats = bounded.stats();
+                System.out.printf("  BoundedCache hit rate %.3f, size %d, evictions %d%n",
+                    stats.hitRate(), bounded.size(), stats.evictions);
+            }
+        }
+        if (a.length > 3) {
+            bench.writeJson(Path.of(a[3]));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+
+// Contention benchmark: the three counters from Notes.Java against StripedCounter
+//   synchronized  - ThreadSafeCounter
+//   atomic        - AtomicCounter (AtomicInteger.incrementAndGet)
+//   lock          - ReentrantLockExample
+//   striped       - StripedCounter
+// Every thread increments the same counter; ns/op is wall time per increment over all
+// threads, so a flat line means the counter scales and a rising line means it is contended.
+// More threads than cores only measures time slicing, so run this on a machine with many cores.
+
+// Usage: java CounterBenchmark [threads] [increments] [output.json]
+//   java CounterBenchmark 1,2,4,8,16,32,64,128 10000000 counter-bench.json
+// Under JMH (forked JVMs): gradle :jmh:jmh -PjmhArgs='CounterJmhBenchmark -t 8'
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+public class CounterBenchmark {
+
+    interface Counter {
+        void increment();
+
+        long get();
+    }
+
+    static final class SynchronizedCounter implements Counter {
+        private int counter = 0;
+
+        public synchronized void increment() {
+            counter++;
+        }
+
+        public synchronized long get() {
+            return counter;
+        }
+    }
+
+    static final class AtomicCounter implements Counter {
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        public void increment() {
+            counter.incrementAndGet();
+        }
+
+        public long get() {
+            return counter.get();
+        }
+    }
+
+    static final class LockCounter implements Counter {
+        private int count = 0;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        public void increment() {
+            lock.lock();
+            try {
+                count++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public long get() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static final class Striped implements Counter {
+        private final StripedCounter counter = new StripedCounter();
+
+        public void increment() {
+            counter.increment();
+        }
+
+        public long get() {
+            return counter.sum();
+        }
+    }
+
+    static final Map<String, Supplier<Counter>> COUNTERS = Map.of(
+        "synchronized", SynchronizedCounter::new,
+        "atomic", AtomicCounter::new,
+        "lock", LockCounter::new,
+        "striped", Striped::new);
+
+    // increment of a new counter, for jmh.CounterJmhBenchmark
+    static Runnable incrementer(String name) {
+        Supplier<Counter> factory = COUNTERS.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown counter " + name);
+        }
+        return factory.get()::increment;
+    }
+
+    public static void main(String a[]) throws IOException, InterruptedException {
+        int[] threadCounts = a.length > 0
+            ? Arrays.stream(a[0].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[] {1, 2, 4, 8, 16, 32, 64, 128};
+        long increments = a.length > 1 ? Long.parseLong(a[1]) : 10_000_000;
+
+        int warmup = 2;
+        int iterations = 5;
+        Bench bench = new Bench(warmup, iterations);
+        for (int threads : threadCounts) {
+            long perThread = increments / threads;
+            for (String name : new String[] {"synchronized", "atomic", "lock", "striped"}) {
+                Counter counter = COUNTERS.get(name).get();
+                bench.runThreads(name, Bench.params("threads", threads), threads, perThread, t -> {
+                    for (long i = 0; i < perThread; i++) {
+                        counter.increment();
+                    }
+                });
+                // every increment of the warmup and measured runs must be there
+                long expected = perThread * threads * (warmup + iterations);
+                if (counter.get() != expected) {
+                    throw new IllegalStateException(name + " lost increments: " + counter.get() + " of " + expected);
+                }
+            }
+        }
+        if (a.length > 2) {
+            bench.writeJson(Path.of(a[2]));
+        }
+    }
+}
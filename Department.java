@@ -0,0 +1,328 @@
+
+// Department dictionaries: interning department names into dense int ids
+// Interning = keeping one canonical copy of each distinct value. The first time a name
+// is seen by a Dictionary it gets the next id (0, 1, 2, ...) and one Department object;
+// after that the same name always maps to the same object. Employee stores only a reference
+// to that object, so millions of employees in "HR" do not keep millions of "HR" Strings
+// alive, and grouping by department can index straight into an array (sums[id] += salary)
+// instead of hashing and comparing Strings in a HashMap.
+
+// A Dictionary never forgets a name, so it only stays small when departments are few.
+//   GLOBAL - what new Employee(name, "HR", salary) uses. It has no limit and lives as long as
+//            the JVM: like String.intern(), it grows by one Department for every distinct name
+//            ever passed to that constructor and never shrinks. Fine for a fixed set of
+//            departments, a slow leak for names that keep changing.
+//   scoped - new Department.Dictionary(limit) for data with many or untrusted department
+//            names (a file import, a benchmark). Build Employees with
+//            new Employee(name, dictionary.intern(dept), salary); the dictionary and its names
+//            are garbage collected together with those employees. A Department never moves to
+//            another dictionary: containers (EmployeeTable, EmployeeStore) keep their own
+//            dictionary, and EmployeeRecord keeps the Department reference.
+// Ids are only meaningful inside their dictionary and one JVM run; write names, not ids, to files.
+// Java serialization follows that rule: a Department is written as its name plus its dictionary,
+// a Dictionary as just its limit. Reading creates one new dictionary per dictionary in the
+// stream and interns the names into it, so departments written from one dictionary still share
+// one after reading, and a stream never adds names to GLOBAL (a GLOBAL department comes back
+// in a dictionary of that stream).
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+public final class Department implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final Dictionary GLOBAL = new Dictionary(Integer.MAX_VALUE);
+
+    private final String name;
+    private final int id;
+    private final Dictionary dictionary;
+
+    private Department(String name, int id, Dictionary dictionary) {
+        this.name = name;
+        this.id = id;
+        this.dictionary = dictionary;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // dense id inside dictionary()
+    public int id() {
+        return id;
+    }
+
+    public Dictionary dictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    @Serial
+    private Object writeReplace() {
+        return new SerializedForm(name, dictionary);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Department is read through its SerializedForm");
+    }
+
+    private record SerializedForm(String name, Dictionary dictionary) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Serial
+        private Object readResolve() throws InvalidObjectException {
+            if (name == null || dictionary == null) {
+                throw new InvalidObjectException("Department without name or dictionary");
+            }
+            try {
+                return dictionary.intern(name);
+            } catch (IllegalStateException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+        }
+    }
+
+    public static final class Dictionary implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        // transient: a Dictionary is written as SerializedForm, its fields never are
+        private final transient Map<String, Department> byName = new ConcurrentHashMap<>();
+        private transient volatile Department[] byId = new Department[16];
+        private final int limit;
+
+        public Dictionary(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            this.limit = limit;
+        }
+
+        public Department intern(String name) {
+            Department department = byName.get(Objects.requireNonNull(name, "department"));
+            return department != null ? department : register(name);
+        }
+
+        private synchronized Department register(String name) {
+            Department department = byName.get(name);
+            if (department != null) {
+                return department;
+            }
+            int newId = byName.size();
+            if (newId == limit) {
+                throw new IllegalStateException("More than " + limit + " departments in one dictionary");
+            }
+            department = new Department(name, newId, this);
+            Department[] current = byId;
+            if (newId == current.length) {
+                current = Arrays.copyOf(current, newId * 2);
+            }
+            current[newId] = department;
+            byId = current;
+            // published last: whoever finds the name in byName also sees it in the array
+            byName.put(name, department);
+            return department;
+        }
+
+        // the department with this name, null if it was never interned here
+        public Department find(String name) {
+            return byName.get(name);
+        }
+
+        public Department get(int id) {
+            return byId[id];
+        }
+
+        // number of departments so far, ids are 0 .. size() - 1
+        public int size() {
+            return byName.size();
+        }
+
+        public int limit() {
+            return limit;
+        }
+
+        @Serial
+        private Object writeReplace() {
+            return new SerializedForm(limit);
+        }
+
+        @Serial
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("Dictionary is read through its SerializedForm");
+        }
+
+        // the names are not written: the departments of the stream intern them again
+        private record SerializedForm(int limit) implements Serializable {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            @Serial
+            private Object readResolve() throws InvalidObjectException {
+                if (limit <= 0) {
+                    throw new InvalidObjectException("Dictionary limit must be positive");
+                }
+                return new Dictionary(limit);
+            }
+        }
+    }
+
+    // Array-indexed grouping, the primitive version of groupingBy(getDepartment, ...)
+    // All employees have to come from the same dictionary.
+
+    private static Dictionary dictionaryOf(List<Employee> employees) {
+        Dictionary dictionary = employees.isEmpty() ? GLOBAL : employees.get(0).getInternedDepartment().dictionary;
+        for (Employee e : employees) {
+            if (e.getInternedDepartment().dictionary != dictionary) {
+                throw new IllegalArgumentException("Employees from different department dictionaries");
+            }
+        }
+        return dictionary;
+    }
+
+    public static long[] salarySumById(List<Employee> employees) {
+        long[] sums = new long[dictionaryOf(employees).size()];
+        for (Employee e : employees) {
+            sums[e.getDepartmentId()] += e.getSalary();
+        }
+        return sums;
+    }
+
+    public static long[] countById(List<Employee> employees) {
+        long[] counts = new long[dictionaryOf(employees).size()];
+        for (Employee e : employees) {
+            counts[e.getDepartmentId()]++;
+        }
+        return counts;
+    }
+
+    // groupingBy(getDepartment, summingInt(getSalary)), departments without employees are left out
+    public static Map<String, Integer> totalSalariesByDept(List<Employee> employees) {
+        Dictionary dictionary = dictionaryOf(employees);
+        long[] sums = new long[dictionary.size()];
+        long[] counts = new long[sums.length];
+        for (Employee e : employees) {
+            int id = e.getDepartmentId();
+            sums[id] += e.getSalary();
+            counts[id]++;
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int id = 0; id < sums.length; id++) {
+            if (counts[id] > 0) {
+                result.put(dictionary.get(id).name, (int) sums[id]);
+            }
+        }
+        return result;
+    }
+
+    // groupingBy(getDepartment, counting())
+    public static Map<String, Long> employeeCountByDept(List<Employee> employees) {
+        Dictionary dictionary = dictionaryOf(employees);
+        long[] counts = countById(employees);
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                result.put(dictionary.get(id).name, counts[id]);
+            }
+        }
+        return result;
+    }
+
+    // Employee as it was before interning: one String reference per row
+    static final class StringEmployee {
+        final String name;
+        final String department;
+        final int salary;
+
+        StringEmployee(String name, String department, int salary) {
+            this.name = name;
+            this.department = department;
+            this.salary = salary;
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String a[]) {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        System.out.println(Department.totalSalariesByDept(employees)); // {HR=7000, IT=11000}
+        System.out.println(Department.employeeCountByDept(employees)); // {HR=2, IT=2}
+
+        // Realistic data: department names come from parsing, so every row brings its own String.
+        // Both lists are built from the same freshly parsed Strings; the String version keeps
+        // them, the interned version drops them after intern(). Names are shared by both lists
+        // so only the department field differs.
+        int rows = a.length > 0 ? Integer.parseInt(a[0]) : 2_000_000;
+        String[] depts = {"HR", "IT", "Sales", "Finance", "Engineering", "Support", "Legal", "Marketing"};
+        Dictionary dictionary = new Dictionary(depts.length);
+        String[] names = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            names[i] = "Employee" + i;
+        }
+        long before = usedHeap();
+        List<StringEmployee> withStrings = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            withStrings.add(new StringEmployee(names[i], new String(depts[i % depts.length].toCharArray()), 2000 + i % 8000));
+        }
+        long stringBytes = usedHeap() - before;
+        withStrings = null;
+
+        before = usedHeap();
+        List<Employee> many = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String parsed = new String(depts[i % depts.length].toCharArray());
+            many.add(new Employee(names[i], dictionary.intern(parsed), 2000 + i % 8000));
+        }
+        long internedBytes = usedHeap() - before;
+        System.out.printf("heap: %d MB with a department String per row, %d MB interned (%d bytes/row saved)%n",
+            stringBytes >> 20, internedBytes >> 20, (stringBytes - internedBytes) / rows);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            Map<String, Integer> byStream = many.stream()
+                .collect(Collectors.groupingBy(Employee::getDepartment, Collectors.summingInt(Employee::getSalary)));
+            Map<String, Long> countsByStream = many.stream()
+                .collect(Collectors.groupingBy(Employee::getDepartment, Collectors.counting()));
+            long streamNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Map<String, Integer> byArray = Department.totalSalariesByDept(many);
+            Map<String, Long> countsByArray = Department.employeeCountByDept(many);
+            long arrayNanos = System.nanoTime() - start;
+
+            if (round == 4) {
+                System.out.printf("totalSalariesByDept + employeeCountByDept: groupingBy %d ms, array-indexed %d ms (%.1fx), same result: %b%n",
+                    streamNanos / 1_000_000, arrayNanos / 1_000_000, (double) streamNanos / arrayNanos,
+                    byStream.equals(byArray) && countsByStream.equals(countsByArray));
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+
+// Incrementally maintained department aggregates (a "materialized view")
+// Instead of running groupingBy over the whole list for every question, the view keeps
+// the answers and adjusts them for every change: a hire adds one salary to its department,
+// a departure subtracts it, a salary change or transfer does both. Every event is O(log d)
+// (d = number of departments), independent of the number of employees.
+
+// Concurrency
+//   Writers take a ReentrantLock, so events are applied one at a time and never half-applied.
+//   Readers do not lock at all. They use a "sequence lock": the writer makes the version odd
+//   before it changes anything and even again afterwards. A reader copies the values and
+//   checks that the version was even and did not move; otherwise it simply reads again.
+//   So a reader always gets a consistent snapshot and a writer never waits for a reader.
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class DepartmentView {
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong version = new AtomicLong();
+
+    // written under writeLock, read by everyone
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // guarded by writeLock
+    // departments with at least one employee, biggest first (ties: first seen department first)
+    private final TreeSet<Integer> bySize = new TreeSet<>(
+        Comparator.<Integer>comparingLong(code -> -this.counts.get(code)).thenComparingInt(code -> code));
+
+    // published to readers, indexed by department code
+    private volatile String[] names = new String[16];
+    private volatile AtomicLongArray sums = new AtomicLongArray(16);
+    private volatile AtomicLongArray counts = new AtomicLongArray(16);
+    private volatile int deptCount;
+    private volatile int largestDept = -1;
+
+    public DepartmentView() {
+    }
+
+    public DepartmentView(List<Employee> base) {
+        base.forEach(this::insert);
+    }
+
+    public void insert(Employee e) {
+        writeLock.lock();
+        try {
+            beginWrite();
+            apply(code(e.getDepartment()), e.getSalary(), 1);
+            endWrite();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void delete(Employee e) {
+        writeLock.lock();
+        try {
+            Integer code = codes.get(e.getDepartment());
+            if (code == null || counts.get(code) == 0) {
+                throw new IllegalArgumentException("No employees in department " + e.getDepartment());
+            }
+            beginWrite();
+            apply(code, -e.getSalary(), -1);
+            endWrite();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Salary change or transfer: both halves become visible to readers together
+    public void update(Employee before, Employee after) {
+        writeLock.lock();
+        try {
+            Integer oldCode = codes.get(before.getDepartment());
+            if (oldCode == null || counts.get(oldCode) == 0) {
+                throw new IllegalArgumentException("No employees in department " + before.getDepartment());
+            }
+            beginWrite();
+            apply(oldCode, -before.getSalary(), -1);
+            apply(code(after.getDepartment()), after.getSalary(), 1);
+            endWrite();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void beginWrite() {
+        version.incrementAndGet(); // odd: readers retry
+    }
+
+    private void endWrite() {
+        version.incrementAndGet(); // even again
+    }
+
+    private int code(String department) {
+        Integer code = codes.get(department);
+        if (code != null) {
+            return code;
+        }
+        int newCode = codes.size();
+        if (newCode == names.length) {
+            int capacity = newCode * 2;
+            AtomicLongArray newSums = new AtomicLongArray(capacity);
+            AtomicLongArray newCounts = new AtomicLongArray(capacity);
+            for (int i = 0; i < newCode; i++) {
+                newSums.set(i, sums.get(i));
+                newCounts.set(i, counts.get(i));
+            }
+            names = Arrays.copyOf(names, capacity);
+            sums = newSums;
+            counts = newCounts;
+        }
+        names[newCode] = department;
+        codes.put(department, newCode);
+        // written after the arrays, a reader that sees the new count also sees arrays big enough for it
+        deptCount = newCode + 1;
+        return newCode;
+    }
+
+    private void apply(int code, long salaryDelta, int countDelta) {
+        bySize.remove(code); // must leave the TreeSet before its sort key changes
+        sums.addAndGet(code, salaryDelta);
+        long count = counts.addAndGet(code, countDelta);
+        if (count > 0) {
+            bySize.add(code);
+        }
+        largestDept = bySize.isEmpty() ? -1 : bySize.first();
+    }
+
+    // Point queries, O(1): each reads a consistent (sum, count) pair of one department
+
+    public long count(String department) {
+        return read(department)[1];
+    }
+
+    public long totalSalary(String department) {
+        return read(department)[0];
+    }
+
+    public double averageSalary(String department) {
+        long[] sumAndCount = read(department);
+        return sumAndCount[1] == 0 ? 0.0 : (double) sumAndCount[0] / sumAndCount[1];
+    }
+
+    private long[] read(String department) {
+        for (int attempt = 0; ; attempt++) {
+            long v = version.get();
+            Integer code = codes.get(department);
+            if (code == null) {
+                return new long[2];
+            }
+            if ((v & 1) == 0 && code < deptCount) {
+                long sum = sums.get(code);
+                long count = counts.get(code);
+                if (version.get() == v) {
+                    return new long[] {sum, count};
+                }
+            }
+            backOff(attempt);
+        }
+    }
+
+    public Snapshot snapshot() {
+        for (int attempt = 0; ; attempt++) {
+            long v = version.get();
+            if ((v & 1) == 0) {
+                int n = deptCount; // read before the arrays, see code()
+                String[] currentNames = names;
+                AtomicLongArray currentSums = sums;
+                AtomicLongArray currentCounts = counts;
+                long[] sumCopy = new long[n];
+                long[] countCopy = new long[n];
+                for (int code = 0; code < n; code++) {
+                    sumCopy[code] = currentSums.get(code);
+                    countCopy[code] = currentCounts.get(code);
+                }
+                int largest = largestDept;
+                if (version.get() == v) {
+                    return new Snapshot(v, Arrays.copyOf(currentNames, n), sumCopy, countCopy, largest);
+                }
+            }
+            backOff(attempt);
+        }
+    }
+
+    private static void backOff(int attempt) {
+        if (attempt < 16) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    // Immutable copy of the view at one version
+    public static final class Snapshot {
+        private final long version;
+        private final String[] names;
+        private final long[] sums;
+        private final long[] counts;
+        private final int largestDept;
+
+        Snapshot(long version, String[] names, long[] sums, long[] counts, int largestDept) {
+            this.version = version;
+            this.names = names;
+            this.sums = sums;
+            this.counts = counts;
+            this.largestDept = largestDept;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public Map<String, Integer> totalSalariesByDept() {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int code = 0; code < names.length; code++) {
+                if (counts[code] > 0) {
+                    result.put(names[code], (int) sums[code]);
+                }
+            }
+            return result;
+        }
+
+        public Map<String, Long> employeeCountByDept() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (int code = 0; code < names.length; code++) {
+                if (counts[code] > 0) {
+                    result.put(names[code], counts[code]);
+                }
+            }
+            return result;
+        }
+
+        public Map<String, Double> avgSalaryByDept() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (int code = 0; code < names.length; code++) {
+                if (counts[code] > 0) {
+                    result.put(names[code], (double) sums[code] / counts[code]);
+                }
+            }
+            return result;
+        }
+
+        public String deptWithMostEmployees() {
+            return largestDept < 0 ? "No Department" : names[largestDept];
+        }
+    }
+
+    public static void main(String a[]) throws InterruptedException {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        DepartmentView view = new DepartmentView(employees);
+
+        view.insert(new Employee("Eve", "IT", 7000));                                       // hire
+        view.update(new Employee("Alice", "HR", 3000), new Employee("Alice", "HR", 3500)); // raise
+        view.delete(new Employee("Charlie", "HR", 4000));                                   // departure
+
+        Snapshot snapshot = view.snapshot();
+        System.out.println(snapshot.totalSalariesByDept()); // {HR=3500, IT=18000}
+        System.out.println(snapshot.employeeCountByDept()); // {HR=1, IT=3}
+        System.out.println(snapshot.avgSalaryByDept());     // {HR=3500.0, IT=6000.0}
+        System.out.println("Department with most employees: " + snapshot.deptWithMostEmployees()); // IT
+
+        // Concurrent writers move people between departments while a reader checks that
+        // every snapshot it sees adds up: transfers never change the total head count.
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            String from = "Team" + w;
+            String to = "Team" + (w + 1) % writers.length;
+            for (int i = 0; i < 100; i++) {
+                view.insert(new Employee("E" + i, from, 1000));
+            }
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    view.update(new Employee("X", from, 1000), new Employee("X", to, 1000));
+                    view.update(new Employee("X", to, 1000), new Employee("X", from, 1000));
+                }
+            });
+        }
+        long expected = view.snapshot().employeeCountByDept().values().stream().mapToLong(Long::longValue).sum();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        long inconsistent = 0;
+        long reads = 0;
+        while (writers[0].isAlive()) {
+            long total = view.snapshot().employeeCountByDept().values().stream().mapToLong(Long::longValue).sum();
+            inconsistent += total == expected ? 0 : 1;
+            reads++;
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        System.out.println(reads + " snapshots read during writes, inconsistent: " + inconsistent); // 0
+    }
+}
@@ -0,0 +1,227 @@
+
+// Parallel department aggregation with the Fork/Join framework
+// A ForkJoinPool runs RecursiveTasks: a task that is too big splits itself in two,
+// fork()s one half to another worker (work stealing) and join()s the result.
+// Here the leaves are cache-sized chunks of an EmployeeTable. Every leaf aggregates
+// into its own small primitive hash table (no sharing, no locks, no boxing) and the
+// partial tables are merged on the way back up, so merging happens as a tree
+// (log2(chunks) levels) instead of everything being merged into one map at the end.
+
+// NUMA: the JVM decides on which memory node the arrays live. Run with -XX:+UseNUMA
+// (Parallel/G1 GC) so that each thread's young allocations, including the partial
+// tables, stay local to the node it runs on.
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class DeptAggregationEngine {
+    // 16K rows = 64 KB of salaries + 64 KB of department codes, fits in L2 cache
+    static final int DEFAULT_CHUNK_ROWS = 16 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int chunkRows;
+
+    public DeptAggregationEngine() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_ROWS);
+    }
+
+    public DeptAggregationEngine(ForkJoinPool pool, int chunkRows) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows must be positive: " + chunkRows);
+        }
+        this.pool = pool;
+        this.chunkRows = chunkRows;
+    }
+
+    public Result aggregate(EmployeeTable table) {
+        AggTable merged = pool.invoke(new ChunkTask(table.salaryColumn(), table.deptColumn(), 0, table.size(), chunkRows));
+        return new Result(table, merged);
+    }
+
+    // Open addressing table: department code -> (sum, count) stored in parallel primitive arrays.
+    // Linear probing, capacity is a power of two, -1 marks an empty slot.
+    static final class AggTable {
+        private int[] keys;
+        private long[] sums;
+        private long[] counts;
+        private int size;
+
+        AggTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 4) * 2 - 1) << 1;
+            keys = new int[capacity];
+            sums = new long[capacity];
+            counts = new long[capacity];
+            Arrays.fill(keys, -1);
+        }
+
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int h = key * 0x9E3779B9;
+            int i = (h ^ (h >>> 16)) & mask;
+            while (keys[i] != key && keys[i] != -1) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        void add(int key, long sum, long count) {
+            int i = slot(key);
+            if (keys[i] == -1) {
+                if (size * 2 >= keys.length) {
+                    grow();
+                    i = slot(key);
+                }
+                keys[i] = key;
+                size++;
+            }
+            sums[i] += sum;
+            counts[i] += count;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldSums = sums;
+            long[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            sums = new long[keys.length];
+            counts = new long[keys.length];
+            Arrays.fill(keys, -1);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    add(oldKeys[i], oldSums[i], oldCounts[i]);
+                }
+            }
+        }
+
+        void mergeFrom(AggTable other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != -1) {
+                    add(other.keys[i], other.sums[i], other.counts[i]);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // never serialized, RecursiveTask is Serializable only by inheritance
+    static final class ChunkTask extends RecursiveTask<AggTable> {
+        private final int[] salaries;
+        private final int[] deptCodes;
+        private final int from;
+        private final int to;
+        private final int chunkRows;
+
+        ChunkTask(int[] salaries, int[] deptCodes, int from, int to, int chunkRows) {
+            this.salaries = salaries;
+            this.deptCodes = deptCodes;
+            this.from = from;
+            this.to = to;
+            this.chunkRows = chunkRows;
+        }
+
+        @Override
+        protected AggTable compute() {
+            if (to - from <= chunkRows) {
+                AggTable table = new AggTable(16);
+                for (int i = from; i < to; i++) {
+                    table.add(deptCodes[i], salaries[i], 1);
+                }
+                return table;
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(salaries, deptCodes, from, mid, chunkRows);
+            ChunkTask right = new ChunkTask(salaries, deptCodes, mid, to, chunkRows);
+            left.fork();
+            AggTable rightTable = right.compute();
+            AggTable leftTable = left.join();
+            leftTable.mergeFrom(rightTable);
+            return leftTable;
+        }
+    }
+
+    // Merged result, answered in the same shapes as the Collectors in Employee.main
+    public static final class Result {
+        private final long[] sums;
+        private final long[] counts;
+        private final EmployeeTable table;
+
+        Result(EmployeeTable table, AggTable merged) {
+            this.table = table;
+            this.sums = new long[table.departmentCount()];
+            this.counts = new long[table.departmentCount()];
+            for (int i = 0; i < merged.keys.length; i++) {
+                if (merged.keys[i] != -1) {
+                    sums[merged.keys[i]] = merged.sums[i];
+                    counts[merged.keys[i]] = merged.counts[i];
+                }
+            }
+        }
+
+        // summingInt adds in an int, the cast wraps exactly like it on overflow
+        public Map<String, Integer> totalSalariesByDept() {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int code = 0; code < sums.length; code++) {
+                result.put(table.departmentName(code), (int) sums[code]);
+            }
+            return result;
+        }
+
+        public Map<String, Long> employeeCountByDept() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (int code = 0; code < counts.length; code++) {
+                result.put(table.departmentName(code), counts[code]);
+            }
+            return result;
+        }
+
+        // averagingInt keeps a long sum and divides by the count as a double
+        public Map<String, Double> avgSalaryByDept() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (int code = 0; code < sums.length; code++) {
+                result.put(table.departmentName(code), (double) sums[code] / counts[code]);
+            }
+            return result;
+        }
+    }
+
+    public static void main(String a[]) {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        Result small = new DeptAggregationEngine().aggregate(EmployeeTable.from(employees));
+        System.out.println(small.totalSalariesByDept()); // {HR=7000, IT=11000}
+        System.out.println(small.employeeCountByDept()); // {HR=2, IT=2}
+        System.out.println(small.avgSalaryByDept());     // {HR=3500.0, IT=5500.0}
+
+        // Scaling: same data, pools with 1..N workers
+        int rows = a.length > 0 ? Integer.parseInt(a[0]) : 10_000_000;
+        EmployeeTable table = new EmployeeTable(rows);
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < rows; i++) {
+            table.add("E" + (i & 1023), "Dept" + random.nextInt(1000), 2000 + random.nextInt(8000));
+        }
+        Result parallel = new DeptAggregationEngine().aggregate(table);
+        System.out.println("matches sequential scan: "
+            + (parallel.totalSalariesByDept().equals(table.totalSalariesByDept())
+            && parallel.employeeCountByDept().equals(table.employeeCountByDept())));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            DeptAggregationEngine engine = new DeptAggregationEngine(pool, DEFAULT_CHUNK_ROWS);
+            engine.aggregate(table); // warm up
+            long start = System.nanoTime();
+            engine.aggregate(table);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println(threads + " thread(s): " + millis + " ms for " + rows + " rows");
+            pool.shutdown();
+        }
+    }
+}
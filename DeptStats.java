@@ -0,0 +1,121 @@
+
+// Single pass department statistics
+// Employee.main uses a separate groupingBy for sum, count and average, so the list is
+// scanned once per question. DeptStats collects count, sum, min, max, average and the
+// top earner of every department in ONE pass over the stream.
+
+// Collector.of(supplier, accumulator, combiner, finisher)
+//   supplier    - creates the mutable result container (here a HashMap)
+//   accumulator - folds one element into the container
+//   combiner    - merges two containers; parallelStream() calls it to join the
+//                 partial results of different threads, so it must be correct
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collector;
+
+public class DeptStats {
+    private long count;
+    private long sum;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private Employee topEarner;
+
+    // Groups by department and builds one DeptStats per department (not one per element)
+    public static Collector<Employee, ?, Map<String, DeptStats>> byDepartment() {
+        return Collector.of(
+            HashMap::new,
+            (Map<String, DeptStats> map, Employee e) ->
+                map.computeIfAbsent(e.getDepartment(), dept -> new DeptStats()).accept(e),
+            (left, right) -> {
+                right.forEach((dept, stats) -> left.merge(dept, stats, DeptStats::combine));
+                return left;
+            },
+            Collections::unmodifiableMap);
+    }
+
+    public void accept(Employee e) {
+        int salary = e.getSalary();
+        count++;
+        sum += salary;
+        min = Math.min(min, salary);
+        // strict '>' keeps the first employee on ties, same as Stream.max
+        if (topEarner == null || salary > max) {
+            topEarner = e;
+        }
+        max = Math.max(max, salary);
+    }
+
+    // Merges other into this. In a sequential stream "this" holds the earlier elements,
+    // so on a salary tie the earlier top earner is kept.
+    public DeptStats combine(DeptStats other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (topEarner == null || other.max > max) {
+            topEarner = other.topEarner;
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public double getAverage() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    public Employee getTopEarner() {
+        return topEarner;
+    }
+
+    @Override
+    public String toString() {
+        return "DeptStats{count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max
+            + ", average=" + getAverage() + ", topEarner=" + (topEarner == null ? null : topEarner.getName()) + '}';
+    }
+
+    public static void main(String a[]) {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+
+        Map<String, DeptStats> statsByDept = employees.stream()
+            .collect(DeptStats.byDepartment());
+        statsByDept.forEach((dept, stats) -> System.out.println(dept + " : " + stats));
+
+        // Same result with parallelStream(), partial maps are merged by the combiner
+        Map<String, DeptStats> parallelStats = employees.parallelStream()
+            .collect(DeptStats.byDepartment());
+        System.out.println("HR average (parallel): " + parallelStats.get("HR").getAverage()); // 3500.0
+
+        // The department with most employees comes out of the same map, no fifth pass
+        String deptWithMostEmployees = statsByDept.entrySet().stream()
+            .max((x, y) -> Long.compare(x.getValue().getCount(), y.getValue().getCount()))
+            .map(Map.Entry::getKey)
+            .orElse("No Department");
+        System.out.println("Department with most employees: " + deptWithMostEmployees);
+    }
+}
@@ -21,12 +21,19 @@ import java.util.stream.Collectors;
 
 public class Employee {
     private String name;
-    private String department;
+    // interned through a Department.Dictionary, see Department.java
+    private Department department;
     private int salary;
 
+    // interns the department in Department.GLOBAL (never shrinks); use the other constructor
+    // with a scoped dictionary for many or untrusted department names
     public Employee(String name, String department, int salary) {
+        this(name, Department.GLOBAL.intern(department), salary);
+    }
+
+    public Employee(String name, Department department, int salary) {
         this.name = name;
-        this.department = department;
+        this.department = Objects.requireNonNull(department, "department");
         this.salary = salary;
     }
 
@@ -35,16 +42,25 @@ public class Employee {
     }
 
     public String getDepartment() {
+        return department.name();
+    }
+
+    public Department getInternedDepartment() {
         return department;
     }
 
+    // id inside getInternedDepartment().dictionary()
+    public int getDepartmentId() {
+        return department.id();
+    }
+
     public int getSalary() {
         return salary;
     }
 
     @Override
     public String toString() {
-        return "Employee{name='" + name + "', department='" + department + "', salary=" + salary + '}';
+        return "Employee{name='" + name + "', department='" + getDepartment() + "', salary=" + salary + '}';
     }
 
     public static void main(String a[]){ 
@@ -0,0 +1,214 @@
+
+// Benchmarks for the stream and collector examples in Employee.main
+// Every operation is measured three ways on the same data:
+//   stream   - employees.stream()...          (what Employee.main does)
+//   parallel - employees.parallelStream()...
+//   loop     - a plain for loop, the baseline the stream versions are compared against
+// Parameters: number of employees (size) and number of distinct departments.
+// ns/op is per employee. The results are printed and written as JSON.
+// For publishable numbers run the same operations under JMH, one forked JVM per benchmark:
+//   gradle :jmh:jmh -PjmhArgs=EmployeeStreamBenchmark   (allocation and JSON results included, see jmh/build.gradle)
+
+// Usage:
+//   java EmployeeBenchmark [sizes] [departments] [output.json] [warmup] [iterations]
+//   java EmployeeBenchmark 1000,100000,1000000 2,100,100000 employee-bench.json 3 5
+// 100M employees need a heap of roughly 16 GB: java -Xmx16g EmployeeBenchmark 100000000 100
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public class EmployeeBenchmark {
+
+    static List<Employee> employees(int size, int departments) {
+        // up to 100,000 departments: a scoped dictionary instead of Department.GLOBAL
+        Department.Dictionary dictionary = new Department.Dictionary(departments);
+        Department[] deptNames = new Department[departments];
+        for (int d = 0; d < departments; d++) {
+            deptNames[d] = dictionary.intern("Dept" + d);
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        List<Employee> employees = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            employees.add(new Employee("Employee" + i, deptNames[random.nextInt(departments)], 2000 + random.nextInt(8000)));
+        }
+        return employees;
+    }
+
+    // Every operation as "name/mode" -> body, for example "groupingBy/stream". main runs them
+    // with Bench; jmh.EmployeeStreamBenchmark runs the same bodies under JMH.
+    static Map<String, Supplier<Object>> operations(List<Employee> employees, int departments) {
+        Map<String, Supplier<Object>> ops = new LinkedHashMap<>();
+        groupingBy(ops, employees);
+        summingInt(ops, employees);
+        averagingInt(ops, employees);
+        max(ops, employees);
+        skipFindFirst(ops, employees);
+        findFirst(ops, employees, departments);
+        flatMap(ops, employees);
+        return ops;
+    }
+
+    static void groupingBy(Map<String, Supplier<Object>> ops, List<Employee> employees) {
+        ops.put("groupingBy/stream", () ->
+            employees.stream().collect(Collectors.groupingBy(Employee::getDepartment)));
+        ops.put("groupingBy/parallel", () ->
+            employees.parallelStream().collect(Collectors.groupingBy(Employee::getDepartment)));
+        ops.put("groupingBy/loop", () -> {
+            Map<String, List<Employee>> byDept = new HashMap<>();
+            for (Employee e : employees) {
+                byDept.computeIfAbsent(e.getDepartment(), k -> new ArrayList<>()).add(e);
+            }
+            return byDept;
+        });
+    }
+
+    static void summingInt(Map<String, Supplier<Object>> ops, List<Employee> employees) {
+        ops.put("summingInt/stream", () ->
+            employees.stream().collect(Collectors.groupingBy(Employee::getDepartment,
+                Collectors.summingInt(Employee::getSalary))));
+        ops.put("summingInt/parallel", () ->
+            employees.parallelStream().collect(Collectors.groupingBy(Employee::getDepartment,
+                Collectors.summingInt(Employee::getSalary))));
+        ops.put("summingInt/loop", () -> {
+            Map<String, int[]> sums = new HashMap<>();
+            for (Employee e : employees) {
+                sums.computeIfAbsent(e.getDepartment(), k -> new int[1])[0] += e.getSalary();
+            }
+            return sums;
+        });
+    }
+
+    static void averagingInt(Map<String, Supplier<Object>> ops, List<Employee> employees) {
+        ops.put("averagingInt/stream", () ->
+            employees.stream().collect(Collectors.groupingBy(Employee::getDepartment,
+                Collectors.averagingInt(Employee::getSalary))));
+        ops.put("averagingInt/parallel", () ->
+            employees.parallelStream().collect(Collectors.groupingBy(Employee::getDepartment,
+                Collectors.averagingInt(Employee::getSalary))));
+        ops.put("averagingInt/loop", () -> {
+            Map<String, long[]> sumAndCount = new HashMap<>();
+            for (Employee e : employees) {
+                long[] acc = sumAndCount.computeIfAbsent(e.getDepartment(), k -> new long[2]);
+                acc[0] += e.getSalary();
+                acc[1]++;
+            }
+            Map<String, Double> averages = new HashMap<>();
+            sumAndCount.forEach((dept, acc) -> averages.put(dept, (double) acc[0] / acc[1]));
+            return averages;
+        });
+    }
+
+    static void max(Map<String, Supplier<Object>> ops, List<Employee> employees) {
+        ops.put("max/stream", () ->
+            employees.stream().max(Comparator.comparingInt(Employee::getSalary)).orElse(null));
+        ops.put("max/parallel", () ->
+            employees.parallelStream().max(Comparator.comparingInt(Employee::getSalary)).orElse(null));
+        ops.put("max/loop", () -> {
+            Employee best = null;
+            for (Employee e : employees) {
+                if (best == null || e.getSalary() > best.getSalary()) {
+                    best = e;
+                }
+            }
+            return best;
+        });
+    }
+
+    // skip(n / 2) then findFirst: the parallel version has to respect encounter order
+    static void skipFindFirst(Map<String, Supplier<Object>> ops, List<Employee> employees) {
+        int n = employees.size();
+        long skip = n / 2;
+        ops.put("skip+findFirst/stream", () ->
+            employees.stream().skip(skip).findFirst().orElse(null));
+        ops.put("skip+findFirst/parallel", () ->
+            employees.parallelStream().skip(skip).findFirst().orElse(null));
+        ops.put("skip+findFirst/loop", () ->
+            skip < n ? employees.get((int) skip) : null);
+    }
+
+    // filter + findFirst: the first employee of the last department, found after a long search
+    static void findFirst(Map<String, Supplier<Object>> ops, List<Employee> employees, int departments) {
+        String target = "Dept" + (departments - 1);
+        ops.put("filter+findFirst/stream", () ->
+            employees.stream().filter(e -> e.getDepartment().equals(target)).findFirst());
+        ops.put("filter+findFirst/parallel", () ->
+            employees.parallelStream().filter(e -> e.getDepartment().equals(target)).findFirst());
+        ops.put("filter+findFirst/loop", () -> {
+            Optional<Employee> found = Optional.empty();
+            for (Employee e : employees) {
+                if (e.getDepartment().equals(target)) {
+                    found = Optional.of(e);
+                    break;
+                }
+            }
+            return found;
+        });
+    }
+
+    // flatMap over the employee list cut into lists of 100
+    static void flatMap(Map<String, Supplier<Object>> ops, List<Employee> employees) {
+        int n = employees.size();
+        List<List<Employee>> nested = new ArrayList<>();
+        for (int i = 0; i < n; i += 100) {
+            nested.add(employees.subList(i, Math.min(n, i + 100)));
+        }
+        ops.put("flatMap/stream", () ->
+            nested.stream().flatMap(List::stream).collect(Collectors.toList()));
+        ops.put("flatMap/parallel", () ->
+            nested.parallelStream().flatMap(List::stream).collect(Collectors.toList()));
+        ops.put("flatMap/loop", () -> {
+            List<Employee> flat = new ArrayList<>();
+            for (List<Employee> inner : nested) {
+                for (Employee e : inner) {
+                    flat.add(e);
+                }
+            }
+            return flat;
+        });
+    }
+
+    private static Map<String, Object> with(Map<String, Object> params, String mode) {
+        Map<String, Object> copy = new LinkedHashMap<>(params);
+        copy.put("mode", mode);
+        return copy;
+    }
+
+    private static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+
+    public static void main(String a[]) throws IOException {
+        int[] sizes = parseInts(a.length > 0 ? a[0] : "1000,100000,1000000");
+        int[] departmentCounts = parseInts(a.length > 1 ? a[1] : "2,100,100000");
+        Path output = Path.of(a.length > 2 ? a[2] : "employee-bench.json");
+        Bench bench = new Bench(a.length > 3 ? Integer.parseInt(a[3]) : 3, a.length > 4 ? Integer.parseInt(a[4]) : 5);
+
+        for (int size : sizes) {
+            for (int departments : departmentCounts) {
+                if (departments > size) {
+                    continue;
+                }
+                List<Employee> employees = employees(size, departments);
+                Map<String, Object> params = Bench.params("size", size, "departments", departments);
+                for (Map.Entry<String, Supplier<Object>> op : operations(employees, departments).entrySet()) {
+                    String[] nameAndMode = op.getKey().split("/");
+                    Supplier<Object> body = op.getValue();
+                    bench.run(nameAndMode[0], with(params, nameAndMode[1]), size, () -> Bench.consume(body.get()));
+                }
+            }
+        }
+        bench.writeJson(output);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+}
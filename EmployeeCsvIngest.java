@@ -0,0 +1,388 @@
+
+// Streaming CSV ingest with bounded memory (producer - consumer)
+// The reader thread (producer) parses the file chunk by chunk into batches and puts them
+// into a bounded BlockingQueue. A consumer thread takes the batches and aggregates them.
+// Backpressure: when the consumer is slower, the queue fills up and put() blocks the reader,
+// so no more of the file is read than fits in the queue.
+// Batches are recycled through a second queue, so the heap used is fixed:
+//   (queueBatches + 2) batches + one read buffer, no matter how big the file is.
+
+// Parsing without String.split: split() creates a regex match, a String[] and one String
+// per field for every line. Here the bytes are scanned directly, the salary is parsed as
+// digits and the department is looked up in a ByteDictionary (no String per line).
+
+// CSV format: name,department,salary one record per line, optional header line, no quoting.
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+public class EmployeeCsvIngest {
+    private final int bufferBytes;
+    private final int batchRows;
+    private final int queueBatches;
+    private final boolean skipHeader;
+    private final ByteDictionary departments = new ByteDictionary();
+    private String[] publishedNames = new String[0]; // reader thread only
+
+    public EmployeeCsvIngest() {
+        this(1 << 20, 4096, 8, true);
+    }
+
+    public EmployeeCsvIngest(int bufferBytes, int batchRows, int queueBatches, boolean skipHeader) {
+        if (bufferBytes < 64 || batchRows <= 0 || queueBatches <= 0) {
+            throw new IllegalArgumentException("bufferBytes >= 64, batchRows > 0 and queueBatches > 0 required");
+        }
+        this.bufferBytes = bufferBytes;
+        this.batchRows = batchRows;
+        this.queueBatches = queueBatches;
+        this.skipHeader = skipHeader;
+    }
+
+    // Department code -> name. Codes are assigned by the reader thread; read names after run() returns.
+    // During run() the sink uses Batch.departmentName, which is safe on the consumer thread.
+    public String departmentName(int code) {
+        return departments.value(code);
+    }
+
+    public int departmentCount() {
+        return departments.size();
+    }
+
+    // A reusable block of parsed rows, stored column by column
+    public static final class Batch {
+        int size;
+        final int[] deptCodes;
+        final int[] salaries;
+        final int[] nameOffsets;
+        byte[] nameBytes;
+        // department names known when the reader handed this batch over, published with the batch
+        String[] deptNames;
+
+        Batch(int rows) {
+            deptCodes = new int[rows];
+            salaries = new int[rows];
+            nameOffsets = new int[rows + 1];
+            nameBytes = new byte[rows * 16];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int deptCode(int row) {
+            return deptCodes[row];
+        }
+
+        public int salary(int row) {
+            return salaries[row];
+        }
+
+        public String departmentName(int code) {
+            return deptNames[code];
+        }
+
+        public String name(int row) {
+            return new String(nameBytes, nameOffsets[row], nameOffsets[row + 1] - nameOffsets[row], StandardCharsets.UTF_8);
+        }
+
+        void add(byte[] line, int nameFrom, int nameTo, int deptCode, int salary) {
+            int start = nameOffsets[size];
+            int length = nameTo - nameFrom;
+            if (start + length > nameBytes.length) {
+                nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, start + length));
+            }
+            System.arraycopy(line, nameFrom, nameBytes, start, length);
+            deptCodes[size] = deptCode;
+            salaries[size] = salary;
+            nameOffsets[++size] = start + length;
+        }
+
+        boolean isFull() {
+            return size == deptCodes.length;
+        }
+    }
+
+    // Receives batches on the consumer thread. The batch is reused after accept returns.
+    public interface BatchSink {
+        void accept(Batch batch, EmployeeCsvIngest ingest);
+    }
+
+    // Throughput numbers of one run
+    public static final class Stats {
+        public final long rows;
+        public final long bytes;
+        public final long nanos;
+
+        Stats(long rows, long bytes, long nanos) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double rowsPerSecond() {
+            return rows * 1e9 / Math.max(nanos, 1);
+        }
+
+        public double mbPerSecond() {
+            return bytes * 1e9 / Math.max(nanos, 1) / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows, %.1f MB in %d ms: %.0f rows/sec, %.1f MB/sec",
+                rows, bytes / (1024.0 * 1024), nanos / 1_000_000, rowsPerSecond(), mbPerSecond());
+        }
+    }
+
+    private static final Batch END = new Batch(1);
+
+    public Stats run(Path csv, BatchSink sink) throws IOException, InterruptedException {
+        BlockingQueue<Batch> full = new ArrayBlockingQueue<>(queueBatches + 1);
+        BlockingQueue<Batch> free = new ArrayBlockingQueue<>(queueBatches + 2);
+        for (int i = 0; i < queueBatches + 2; i++) {
+            free.add(new Batch(batchRows));
+        }
+        Throwable[] consumerFailure = new Throwable[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                for (Batch batch = full.take(); batch != END; batch = full.take()) {
+                    sink.accept(batch, this);
+                    batch.size = 0;
+                    free.put(batch);
+                }
+            } catch (Throwable t) {
+                consumerFailure[0] = t;
+            }
+        }, "csv-ingest-consumer");
+        consumer.start();
+
+        long start = System.nanoTime();
+        long rows = 0;
+        long bytes = 0;
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferBytes);
+            byte[] data = buffer.array();
+            Batch batch = nextFree(free, consumer, consumerFailure);
+            boolean header = skipHeader;
+            boolean eof = false;
+            while (!eof) {
+                int read = channel.read(buffer);
+                eof = read < 0;
+                bytes += Math.max(read, 0);
+                int end = buffer.position();
+                if (eof && end > 0 && data[end - 1] != '\n') {
+                    data[end++] = '\n'; // last line without a line break, compact() left room for it
+                }
+                int lineStart = 0;
+                for (int i = 0; i < end; i++) {
+                    if (data[i] != '\n') {
+                        continue;
+                    }
+                    int lineEnd = i > lineStart && data[i - 1] == '\r' ? i - 1 : i;
+                    if (header) {
+                        header = false;
+                    } else if (lineEnd > lineStart) {
+                        parseLine(data, lineStart, lineEnd, batch);
+                        rows++;
+                        if (batch.isFull()) {
+                            put(full, batch, consumer, consumerFailure);
+                            batch = nextFree(free, consumer, consumerFailure);
+                        }
+                    }
+                    lineStart = i + 1;
+                }
+                if (lineStart == 0 && end == data.length) {
+                    throw new IOException("Line longer than the read buffer (" + bufferBytes + " bytes)");
+                }
+                // keep the unfinished line at the start of the buffer and read behind it
+                buffer.position(lineStart).limit(end);
+                buffer.compact();
+            }
+            if (batch.size > 0) {
+                put(full, batch, consumer, consumerFailure);
+            }
+        } finally {
+            while (consumer.isAlive() && !full.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // consumer still busy with earlier batches
+            }
+            consumer.join();
+        }
+        if (consumerFailure[0] != null) {
+            throw new IllegalStateException("Batch sink failed", consumerFailure[0]);
+        }
+        return new Stats(rows, bytes, System.nanoTime() - start);
+    }
+
+    private void parseLine(byte[] data, int from, int to, Batch batch) throws IOException {
+        int firstComma = indexOf(data, from, to, (byte) ',');
+        int secondComma = firstComma < 0 ? -1 : indexOf(data, firstComma + 1, to, (byte) ',');
+        if (secondComma < 0) {
+            throw new IOException("Expected name,department,salary but got: " + new String(data, from, to - from, StandardCharsets.UTF_8));
+        }
+        int deptCode = departments.code(data, firstComma + 1, secondComma);
+        batch.add(data, from, firstComma, deptCode, parseInt(data, secondComma + 1, to));
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseInt(byte[] data, int from, int to) throws IOException {
+        boolean negative = from < to && data[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            throw new IOException("Empty salary");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE + 1L) {
+                throw new IOException("Bad salary: " + new String(data, from, to - from, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IOException("Salary out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    // Waits for a free batch but gives up when the consumer died (it would never return one)
+    private static Batch nextFree(BlockingQueue<Batch> free, Thread consumer, Throwable[] consumerFailure) throws InterruptedException {
+        Batch batch;
+        while ((batch = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            checkConsumer(consumer, consumerFailure);
+        }
+        return batch;
+    }
+
+    // Hands a batch to the consumer together with the department names it may refer to.
+    // The queue publishes the names safely; a new array is made only when the dictionary grew.
+    private void put(BlockingQueue<Batch> full, Batch batch, Thread consumer, Throwable[] consumerFailure) throws InterruptedException {
+        if (publishedNames.length != departments.size()) {
+            publishedNames = departments.values();
+        }
+        batch.deptNames = publishedNames;
+        while (!full.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            checkConsumer(consumer, consumerFailure);
+        }
+    }
+
+    // The consumer only stops early when the sink threw; report that exception, not just the stop
+    private static void checkConsumer(Thread consumer, Throwable[] consumerFailure) {
+        if (!consumer.isAlive()) {
+            throw new IllegalStateException("Batch sink failed", consumerFailure[0]);
+        }
+    }
+
+    // Sink that keeps per-department sum and count in primitive arrays (allocation free)
+    public static final class DeptTotals implements BatchSink {
+        private long[] sums = new long[16];
+        private long[] counts = new long[16];
+        private EmployeeCsvIngest ingest;
+
+        @Override
+        public void accept(Batch batch, EmployeeCsvIngest ingest) {
+            this.ingest = ingest;
+            for (int row = 0; row < batch.size; row++) {
+                int code = batch.deptCodes[row];
+                if (code >= sums.length) {
+                    sums = Arrays.copyOf(sums, Math.max(sums.length * 2, code + 1));
+                    counts = Arrays.copyOf(counts, sums.length);
+                }
+                sums[code] += batch.salaries[row];
+                counts[code]++;
+            }
+        }
+
+        public Map<String, Integer> totalSalariesByDept() {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int code = 0; ingest != null && code < ingest.departmentCount(); code++) {
+                result.put(ingest.departmentName(code), (int) sums[code]);
+            }
+            return result;
+        }
+
+        public Map<String, Long> employeeCountByDept() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (int code = 0; ingest != null && code < ingest.departmentCount(); code++) {
+                result.put(ingest.departmentName(code), counts[code]);
+            }
+            return result;
+        }
+
+        public Map<String, Double> avgSalaryByDept() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (int code = 0; ingest != null && code < ingest.departmentCount(); code++) {
+                result.put(ingest.departmentName(code), (double) sums[code] / counts[code]);
+            }
+            return result;
+        }
+    }
+
+    // Runs any Collector (for example DeptStats.byDepartment()) on the consumer thread.
+    // This path creates one Employee per row; use a primitive sink like DeptTotals when that matters.
+    public <A, R> R collect(Path csv, Collector<Employee, A, R> collector) throws IOException, InterruptedException {
+        Supplier<A> supplier = collector.supplier();
+        BiConsumer<A, Employee> accumulator = collector.accumulator();
+        A container = supplier.get();
+        // department names come from the file, so they are interned per call, not in Department.GLOBAL
+        Department.Dictionary departments = new Department.Dictionary(Integer.MAX_VALUE);
+        run(csv, (batch, ingest) -> {
+            for (int row = 0; row < batch.size; row++) {
+                accumulator.accept(container, new Employee(batch.name(row),
+                    departments.intern(batch.departmentName(batch.deptCodes[row])), batch.salaries[row]));
+            }
+        });
+        return collector.finisher().apply(container);
+    }
+
+    public static void main(String a[]) throws IOException, InterruptedException {
+        int rows = a.length > 0 ? Integer.parseInt(a[0]) : 2_000_000;
+        Path csv = Files.createTempFile("employees", ".csv");
+        try {
+            try (Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                writer.write("name,department,salary\n");
+                writer.write("Alice,HR,3000\nBob,IT,5000\nCharlie,HR,4000\nDavid,IT,6000\n");
+                String[] depts = {"HR", "IT", "Sales", "Finance"};
+                for (int i = 4; i < rows; i++) {
+                    writer.write("Employee" + i + "," + depts[i % depts.length] + "," + (3000 + i % 4000) + "\n");
+                }
+            }
+
+            DeptTotals totals = new DeptTotals();
+            EmployeeCsvIngest ingest = new EmployeeCsvIngest();
+            Stats stats = ingest.run(csv, totals);
+            System.out.println(totals.totalSalariesByDept());
+            System.out.println(totals.employeeCountByDept());
+            System.out.println(totals.avgSalaryByDept());
+            System.out.println(stats);
+
+            Map<String, DeptStats> deptStats = new EmployeeCsvIngest().collect(csv, DeptStats.byDepartment());
+            System.out.println("HR via DeptStats collector: " + deptStats.get("HR"));
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+
+// Binary employee file, read through a memory-mapped file
+// FileChannel.map() asks the operating system to map the file into the process address
+// space. Nothing is copied or parsed when the file is opened: pages are loaded lazily the
+// first time they are touched, and they live in the OS page cache, not on the Java heap.
+// A MappedByteBuffer can address at most 2 GB, so bigger files are mapped in several pieces.
+
+// File layout (little-endian)
+//   header   : magic "EMPF", version, row count, department count, offsets of the sections
+//   records  : one fixed-width 16 byte record per row
+//                int  department code (index into the dictionary)
+//                int  salary
+//                long offset of the name in the name heap
+//   names    : for every row: unsigned short length + UTF-8 bytes
+//   dictionary: for every department code: unsigned short length + UTF-8 bytes
+// open() checks the header against the file size and reads the dictionary with bounds checks;
+// department codes and name offsets are checked when a row is read. A file that does not
+// match its header fails with "Corrupt employee file" (IOException, or UncheckedIOException
+// from the methods that do no I/O) instead of an index error.
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EmployeeFile implements AutoCloseable {
+    static final int MAGIC = 0x46504D45; // "EMPF"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+    static final int RECORD_BYTES = 16;
+    // rows per mapped piece, so one piece stays under the 2 GB MappedByteBuffer limit
+    static final int ROWS_PER_MAPPING = (Integer.MAX_VALUE / RECORD_BYTES) & ~1023;
+
+    private final FileChannel channel;
+    private final long rowCount;
+    private final String[] deptNames;
+    // Employees built from this file intern their departments here, not in Department.GLOBAL
+    private final Department.Dictionary departments;
+    private final long namesOffset;
+    private final long namesBytes;
+    private final MappedByteBuffer[] records;
+
+    private EmployeeFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not an employee file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported employee file version: " + version);
+        }
+        rowCount = header.getLong();
+        int deptCount = header.getInt();
+        header.getInt(); // padding
+        long recordsOffset = header.getLong();
+        namesOffset = header.getLong();
+        namesBytes = header.getLong();
+        long dictOffset = namesOffset + namesBytes;
+        long fileSize = channel.size();
+        // every row has a record and at least a 2 byte name; the dictionary at least 2 bytes per code
+        if (rowCount < 0 || deptCount < 0 || recordsOffset != HEADER_BYTES
+                || rowCount > (fileSize - HEADER_BYTES) / RECORD_BYTES
+                || namesOffset != recordsOffset + rowCount * RECORD_BYTES
+                || namesBytes < 2 * rowCount || dictOffset > fileSize
+                || fileSize - dictOffset < 2L * deptCount || fileSize - dictOffset > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt employee file: header (" + rowCount + " rows, " + deptCount
+                + " departments) does not match the file size of " + fileSize + " bytes");
+        }
+
+        int pieces = (int) ((rowCount + ROWS_PER_MAPPING - 1) / ROWS_PER_MAPPING);
+        records = new MappedByteBuffer[pieces];
+        for (int p = 0; p < pieces; p++) {
+            long firstRow = (long) p * ROWS_PER_MAPPING;
+            long rows = Math.min(ROWS_PER_MAPPING, rowCount - firstRow);
+            records[p] = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + firstRow * RECORD_BYTES, rows * RECORD_BYTES);
+            records[p].order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        // the dictionary is tiny, read it into the heap
+        ByteBuffer dict = ByteBuffer.allocate((int) (fileSize - dictOffset)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(dict, dictOffset);
+        dict.flip();
+        deptNames = new String[deptCount];
+        for (int code = 0; code < deptCount; code++) {
+            int length = dict.remaining() < 2 ? -1 : Short.toUnsignedInt(dict.getShort());
+            if (length < 0 || dict.remaining() < length) {
+                throw new IOException("Corrupt employee file: dictionary ends inside department " + code + " of " + deptCount);
+            }
+            byte[] bytes = new byte[length];
+            dict.get(bytes);
+            deptNames[code] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (dict.hasRemaining()) {
+            throw new IOException("Corrupt employee file: " + dict.remaining() + " bytes after the dictionary");
+        }
+        departments = new Department.Dictionary(Math.max(deptCount, 1));
+    }
+
+    public static EmployeeFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new EmployeeFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static void write(Path path, EmployeeTable table) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer names = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            int rows = table.size();
+            long recordsOffset = HEADER_BYTES;
+            long namesOffset = recordsOffset + (long) rows * RECORD_BYTES;
+
+            // One pass writes the records and the names side by side, each name is encoded once.
+            // The name offset of every row is known from the lengths of the previous names.
+            long recordsPosition = recordsOffset;
+            long namesPosition = namesOffset;
+            long nameOffset = 0;
+            for (int row = 0; row < rows; row++) {
+                byte[] name = utf8(table.name(row));
+                if (buffer.remaining() < RECORD_BYTES) {
+                    recordsPosition = drain(buffer, out, recordsPosition);
+                }
+                buffer.putInt(table.deptColumn()[row]).putInt(table.salaryColumn()[row]).putLong(nameOffset);
+                namesPosition = putString(names, out, namesPosition, name);
+                nameOffset += 2 + name.length;
+            }
+            drain(buffer, out, recordsPosition);
+            long namesBytes = nameOffset;
+
+            for (int code = 0; code < table.departmentCount(); code++) {
+                namesPosition = putString(names, out, namesPosition, utf8(table.departmentName(code)));
+            }
+            drain(names, out, namesPosition);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(rows).putInt(table.departmentCount()).putInt(0)
+                .putLong(recordsOffset).putLong(namesOffset).putLong(namesBytes);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer, HEADER_BYTES - buffer.remaining());
+            }
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String longer than 65535 bytes: " + s.substring(0, 32) + "...");
+        }
+        return bytes;
+    }
+
+    // buffer holds the bytes to be written at `position`; returns the new position
+    private static long putString(ByteBuffer buffer, FileChannel out, long position, byte[] bytes) throws IOException {
+        if (buffer.remaining() < 2 + bytes.length) {
+            position = drain(buffer, out, position);
+        }
+        buffer.putShort((short) bytes.length).put(bytes);
+        return position;
+    }
+
+    // writes the buffer at `position` and empties it; returns the position after the written bytes
+    private static long drain(ByteBuffer buffer, FileChannel out, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    private static UncheckedIOException corrupt(String message) {
+        return new UncheckedIOException(new IOException("Corrupt employee file: " + message));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of employee file");
+            }
+        }
+    }
+
+    public long size() {
+        return rowCount;
+    }
+
+    public int departmentCount() {
+        return deptNames.length;
+    }
+
+    public String departmentName(int code) {
+        return deptNames[code];
+    }
+
+    private MappedByteBuffer piece(long row) {
+        return records[(int) (row / ROWS_PER_MAPPING)];
+    }
+
+    private static int recordOffset(long row) {
+        return (int) (row % ROWS_PER_MAPPING) * RECORD_BYTES;
+    }
+
+    public int salary(long row) {
+        return piece(row).getInt(recordOffset(row) + 4);
+    }
+
+    public int deptCode(long row) {
+        return checkedCode(piece(row).getInt(recordOffset(row)), row);
+    }
+
+    private int checkedCode(int code, long row) {
+        if (Integer.compareUnsigned(code, deptNames.length) >= 0) {
+            throw corrupt("department code " + code + " in row " + row + ", the dictionary has " + deptNames.length);
+        }
+        return code;
+    }
+
+    // Names are not on the hot path, so they are read with a positional read instead of being mapped
+    public String name(long row) throws IOException {
+        long nameOffset = piece(row).getLong(recordOffset(row) + 8);
+        if (nameOffset < 0 || nameOffset > namesBytes - 2) {
+            throw new IOException("Corrupt employee file: name offset " + nameOffset + " in row " + row);
+        }
+        long offset = namesOffset + nameOffset;
+        ByteBuffer length = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(length, offset);
+        ByteBuffer bytes = ByteBuffer.allocate(Short.toUnsignedInt(length.getShort(0)));
+        readFully(bytes, offset + 2);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    public Employee employee(long row) throws IOException {
+        return new Employee(name(row), departments.intern(deptNames[deptCode(row)]), salary(row));
+    }
+
+    // Aggregations straight over the mapped records, no Employee objects are created
+
+    public long[] salarySumByDeptCode() {
+        long[] sums = new long[deptNames.length];
+        for (MappedByteBuffer piece : records) {
+            for (int offset = 0, end = piece.limit(); offset < end; offset += RECORD_BYTES) {
+                int code = piece.getInt(offset);
+                if (Integer.compareUnsigned(code, sums.length) >= 0) {
+                    throw corrupt("department code " + code + ", the dictionary has " + sums.length);
+                }
+                sums[code] += piece.getInt(offset + 4);
+            }
+        }
+        return sums;
+    }
+
+    public long[] countByDeptCode() {
+        long[] counts = new long[deptNames.length];
+        for (MappedByteBuffer piece : records) {
+            for (int offset = 0, end = piece.limit(); offset < end; offset += RECORD_BYTES) {
+                int code = piece.getInt(offset);
+                if (Integer.compareUnsigned(code, counts.length) >= 0) {
+                    throw corrupt("department code " + code + ", the dictionary has " + counts.length);
+                }
+                counts[code]++;
+            }
+        }
+        return counts;
+    }
+
+    public long maxSalaryRow() {
+        long best = -1;
+        int bestSalary = Integer.MIN_VALUE;
+        long row = 0;
+        for (MappedByteBuffer piece : records) {
+            for (int offset = 0, end = piece.limit(); offset < end; offset += RECORD_BYTES, row++) {
+                int salary = piece.getInt(offset + 4);
+                if (best < 0 || salary > bestSalary) {
+                    best = row;
+                    bestSalary = salary;
+                }
+            }
+        }
+        return best;
+    }
+
+    public Map<String, Integer> totalSalariesByDept() {
+        long[] sums = salarySumByDeptCode();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            result.put(deptNames[code], (int) sums[code]);
+        }
+        return result;
+    }
+
+    public Map<String, Long> employeeCountByDept() {
+        long[] counts = countByDeptCode();
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            result.put(deptNames[code], counts[code]);
+        }
+        return result;
+    }
+
+    public Map<String, Double> avgSalaryByDept() {
+        long[] sums = salarySumByDeptCode();
+        long[] counts = countByDeptCode();
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            result.put(deptNames[code], (double) sums[code] / counts[code]);
+        }
+        return result;
+    }
+
+    // Closes the channel. The mapped pages are released when the buffers are garbage collected;
+    // MappedByteBuffer has no public API to unmap them earlier.
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String a[]) throws IOException {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        Path path = Files.createTempFile("employees", ".bin");
+        try {
+            EmployeeFile.write(path, EmployeeTable.from(employees));
+            System.out.println("File size: " + Files.size(path) + " bytes");
+
+            long start = System.nanoTime();
+            try (EmployeeFile file = EmployeeFile.open(path)) {
+                System.out.println("Opened in " + (System.nanoTime() - start) / 1000 + " us");
+                System.out.println(file.totalSalariesByDept()); // {HR=7000, IT=11000}
+                System.out.println(file.employeeCountByDept()); // {HR=2, IT=2}
+                System.out.println(file.avgSalaryByDept());     // {HR=3500.0, IT=5500.0}
+                System.out.println("Highest Paid Employee: " + file.employee(file.maxSalaryRow()));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
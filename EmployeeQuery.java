@@ -0,0 +1,310 @@
+
+// Indexed queries with keyset paging over an EmployeeTable
+// "employees in IT with salary between 3000 and 6000, sorted by salary, page 7" as a stream:
+//   employees.stream().filter(dept).filter(salary).sorted(bySalary).skip(6 * 20).limit(20)
+// touches and sorts every row on every request, so it gets slower as the table grows.
+// Here the filters are answered by an index before any row is read:
+//   index       - per department, a sorted long[] of (salary << 32 | row). Sorted by salary,
+//                 then row, so every key is unique and salary ties have a fixed order.
+//                 A query without a department uses one global index over all rows.
+//   pushdown    - the salary range is two binary searches in the department's index, so the
+//                 matching rows are one contiguous slice of it, found in O(log n)
+//   keyset paging - a page does not skip the rows of the pages before it. Its cursor is the
+//                 key of its last row, and the next page starts right after that key, again
+//                 with one binary search. Page 1000 costs the same as page 1.
+//   materialize - only the rows of the returned page are turned into Employee objects
+// Cost per page: O(log n + page size), independent of how many rows match or the page number.
+// Index memory: 8 bytes per row per index (departments + global = 16 bytes per row).
+// The index is a snapshot: rows added to the table later are seen after refresh(). refresh()
+// builds all indexes, the global one included, off to the side and publishes them together as
+// one immutable Indexes object through a volatile field. A query reads that field once, so it
+// never waits for a rebuild, never pays for building an index, and never mixes two builds.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+public final class EmployeeQuery {
+    public enum Order { ASCENDING, DESCENDING }
+
+    private final EmployeeTable table;
+    private volatile Indexes indexes;
+
+    // One build of all indexes; never changed after it is published
+    private static final class Indexes {
+        final long[][] byDepartment;
+        final long[] global;
+
+        Indexes(long[][] byDepartment, long[] global) {
+            this.byDepartment = byDepartment;
+            this.global = global;
+        }
+    }
+
+    public EmployeeQuery(EmployeeTable table) {
+        this.table = Objects.requireNonNull(table);
+        refresh();
+    }
+
+    // Rebuilds the indexes so they include rows added to the table since the last build.
+    // Synchronized only against other refreshes; queries keep using the previous indexes.
+    public synchronized void refresh() {
+        int rows = table.size();
+        int[] salaries = table.salaryColumn();
+        int[] codes = table.deptColumn();
+        long[][] byDepartment = new long[table.departmentCount()][];
+        int[] counts = new int[byDepartment.length];
+        for (int row = 0; row < rows; row++) {
+            counts[codes[row]]++;
+        }
+        for (int d = 0; d < byDepartment.length; d++) {
+            byDepartment[d] = new long[counts[d]];
+        }
+        Arrays.fill(counts, 0);
+        long[] global = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            int d = codes[row];
+            long k = key(salaries[row], row);
+            byDepartment[d][counts[d]++] = k;
+            global[row] = k;
+        }
+        for (long[] index : byDepartment) {
+            Arrays.parallelSort(index);
+        }
+        Arrays.parallelSort(global);
+        indexes = new Indexes(byDepartment, global);
+    }
+
+    // rows are below 2^31, so the long order is salary first, then row
+    static long key(int salary, int row) {
+        return (long) salary << 32 | row;
+    }
+
+    static int rowOf(long key) {
+        return (int) key;
+    }
+
+    // first index in [from, to) whose key is >= k
+    private static int lowerBound(long[] index, int from, int to, long k) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (index[middle] < k) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    public Query query() {
+        return new Query();
+    }
+
+    // Position after the last row of a page. toString/parse turn it into a token for a URL.
+    public static final class Cursor {
+        final long key;
+
+        Cursor(long key) {
+            this.key = key;
+        }
+
+        public static Cursor parse(String token) {
+            return new Cursor(Long.parseLong(token, 36));
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(key, 36);
+        }
+    }
+
+    public static final class Page {
+        public final List<Employee> rows;
+        // all rows matching the filters, on every page
+        public final int totalMatches;
+        // null on the last page
+        public final Cursor next;
+
+        Page(List<Employee> rows, int totalMatches, Cursor next) {
+            this.rows = rows;
+            this.totalMatches = totalMatches;
+            this.next = next;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " of " + totalMatches + (next == null ? "" : ", next=" + next);
+        }
+    }
+
+    public final class Query {
+        private String department;
+        private int minSalary = Integer.MIN_VALUE;
+        private int maxSalary = Integer.MAX_VALUE;
+        private Order order = Order.ASCENDING;
+        private int limit = 20;
+        private Cursor after;
+
+        public Query department(String department) {
+            this.department = department;
+            return this;
+        }
+
+        // inclusive on both ends
+        public Query salaryBetween(int min, int max) {
+            this.minSalary = min;
+            this.maxSalary = max;
+            return this;
+        }
+
+        public Query orderBySalary(Order order) {
+            this.order = order;
+            return this;
+        }
+
+        public Query limit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        // continues after the last row of a previous page of the same query
+        public Query after(Cursor cursor) {
+            this.after = cursor;
+            return this;
+        }
+
+        public Page fetch() {
+            if (minSalary > maxSalary) {
+                return new Page(List.of(), 0, null);
+            }
+            Indexes snapshot = indexes;
+            long[] index;
+            if (department == null) {
+                index = snapshot.global;
+            } else {
+                int code = table.departmentCode(department);
+                // a department registered after the last refresh() has no index yet
+                if (code < 0 || code >= snapshot.byDepartment.length) {
+                    return new Page(List.of(), 0, null);
+                }
+                index = snapshot.byDepartment[code];
+            }
+            // predicate pushdown: the salary range is the slice [from, to) of the index
+            int from = lowerBound(index, 0, index.length, key(minSalary, 0));
+            int to = maxSalary == Integer.MAX_VALUE
+                ? index.length
+                : lowerBound(index, from, index.length, key(maxSalary + 1, 0));
+            int totalMatches = to - from;
+
+            // keyset paging: continue right after the cursor's key
+            if (after != null) {
+                if (order == Order.ASCENDING) {
+                    from = Math.max(from, lowerBound(index, from, to, after.key + 1));
+                } else {
+                    to = Math.min(to, lowerBound(index, from, to, after.key));
+                }
+            }
+            int count = Math.min(limit, to - from);
+            List<Employee> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long k = order == Order.ASCENDING ? index[from + i] : index[to - 1 - i];
+                rows.add(table.employee(rowOf(k)));
+            }
+            Cursor next = null;
+            if (count < to - from) {
+                next = new Cursor(order == Order.ASCENDING ? index[from + count - 1] : index[to - count]);
+            }
+            return new Page(rows, totalMatches, next);
+        }
+    }
+
+    // The same query the way Employee.main would write it: filter, sort and skip the whole list
+    static List<Employee> streamPage(List<Employee> employees, String department, int min, int max, int page, int pageSize) {
+        return employees.stream()
+            .filter(e -> e.getDepartment().equals(department))
+            .filter(e -> e.getSalary() >= min && e.getSalary() <= max)
+            .sorted(Comparator.comparingInt(Employee::getSalary))
+            .skip((long) page * pageSize)
+            .limit(pageSize)
+            .collect(Collectors.toList());
+    }
+
+    public static void main(String a[]) {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000),
+            new Employee("Eve", "IT", 4500)
+        );
+        EmployeeQuery query = new EmployeeQuery(EmployeeTable.from(employees));
+        Page first = query.query().department("IT").salaryBetween(4000, 6000).limit(2).fetch();
+        System.out.println(first); // [Eve (4500), Bob (5000)] of 3, next=...
+        Page second = query.query().department("IT").salaryBetween(4000, 6000).limit(2).after(Cursor.parse(first.next.toString())).fetch();
+        System.out.println(second); // [David (6000)] of 3
+        System.out.println(query.query().orderBySalary(Order.DESCENDING).limit(1).fetch().rows); // highest paid: David
+
+        // Latency per page as the table grows: stream (filter + sort + skip) vs index + keyset cursor
+        int[] sizes = a.length > 0
+            ? Arrays.stream(a[0].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[] {100_000, 1_000_000, 10_000_000};
+        String[] depts = {"HR", "IT", "Sales", "Finance", "Engineering", "Support", "Legal", "Marketing"};
+        for (int size : sizes) {
+            SplittableRandom random = new SplittableRandom(20);
+            EmployeeTable table = new EmployeeTable(size);
+            List<Employee> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String dept = depts[random.nextInt(depts.length)];
+                int salary = 2000 + random.nextInt(8000);
+                table.add("Employee" + i, dept, salary);
+                if (size <= 1_000_000) {
+                    list.add(new Employee("Employee" + i, dept, salary));
+                }
+            }
+            long start = System.nanoTime();
+            EmployeeQuery index = new EmployeeQuery(table);
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // walk 50 pages deep through random queries, timing every page
+            LatencyHistogram indexed = new LatencyHistogram();
+            for (int q = 0; q < 2_000; q++) {
+                String dept = depts[random.nextInt(depts.length)];
+                int min = 2000 + random.nextInt(6000);
+                Cursor cursor = null;
+                for (int page = 0; page < 50; page++) {
+                    long t = System.nanoTime();
+                    Page p = index.query().department(dept).salaryBetween(min, min + 2000).limit(20).after(cursor).fetch();
+                    indexed.record(System.nanoTime() - t);
+                    cursor = p.next;
+                    if (cursor == null) {
+                        break;
+                    }
+                }
+            }
+            LatencyHistogram.Snapshot i = indexed.snapshot();
+            System.out.printf("%,d rows (index built in %d ms): index+cursor p50 %,d ns, p99 %,d ns",
+                size, buildMillis, i.percentile(50), i.percentile(99));
+            if (!list.isEmpty()) {
+                LatencyHistogram streamed = new LatencyHistogram();
+                for (int q = 0; q < 20; q++) {
+                    String dept = depts[random.nextInt(depts.length)];
+                    int min = 2000 + random.nextInt(6000);
+                    long t = System.nanoTime();
+                    Bench.consume(streamPage(list, dept, min, min + 2000, 49, 20));
+                    streamed.record(System.nanoTime() - t);
+                }
+                LatencyHistogram.Snapshot s = streamed.snapshot();
+                System.out.printf(" | stream page 50 p50 %,d ns, p99 %,d ns", s.percentile(50), s.percentile(99));
+            }
+            System.out.println();
+        }
+    }
+}
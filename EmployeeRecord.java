@@ -0,0 +1,109 @@
+
+// Immutable employee as a record (see Java17Records.Java)
+// Employee has no equals/hashCode, so two employees with the same data are different map
+// keys, and its toString builds a new String from five pieces on every call. EmployeeRecord:
+//   equals/hashCode - by value, so it works as a HashMap key or in a HashSet
+//   hash            - a record cannot have extra fields, so the hash cannot be stored next to
+//                     the components. It does not need to be: String caches its own hash after
+//                     the first call, so hashCode() mixes the cached name and department
+//                     hashes with the salary, no matter how long the name is.
+//   appendTo        - writes the same text as Employee.toString into a StringBuilder or any
+//                     Appendable (a log buffer, a Writer) without creating a String first
+//   department      - the interned Department, like in Employee: one shared reference, and the
+//                     record stays in the dictionary its employee came from. Equality compares
+//                     the department name, so records from two dictionaries can be equal.
+//   Serializable    - the default record form: Department serializes itself as name plus
+//                     dictionary (Department.java), so records read from one stream share
+//                     one new dictionary and never add names to Department.GLOBAL
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public record EmployeeRecord(String name, Department department, int salary) implements Serializable {
+
+    public EmployeeRecord {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(department, "department");
+    }
+
+    // interns the department in Department.GLOBAL, like new Employee(name, "HR", salary)
+    public EmployeeRecord(String name, String department, int salary) {
+        this(name, Department.GLOBAL.intern(department), salary);
+    }
+
+    public static EmployeeRecord of(Employee e) {
+        return new EmployeeRecord(e.getName(), e.getInternedDepartment(), e.getSalary());
+    }
+
+    public String departmentName() {
+        return department.name();
+    }
+
+    public Employee toEmployee() {
+        return new Employee(name, department, salary);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = name.hashCode(); // both hashes are cached inside their Strings after the first call
+        h = 31 * h + department.name().hashCode();
+        return 31 * h + salary;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof EmployeeRecord
+            && ((EmployeeRecord) o).salary == salary
+            && sameDepartment(((EmployeeRecord) o).department)
+            && ((EmployeeRecord) o).name.equals(name);
+    }
+
+    // the same object when both come from one dictionary, otherwise compare the names
+    private boolean sameDepartment(Department other) {
+        return other == department || other.name().equals(department.name());
+    }
+
+    // Same text as Employee.toString
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append("Employee{name='").append(name)
+            .append("', department='").append(department.name())
+            .append("', salary=").append(salary).append('}');
+    }
+
+    public Appendable appendTo(Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            return appendTo((StringBuilder) out);
+        }
+        return out.append("Employee{name='").append(name)
+            .append("', department='").append(department.name())
+            .append("', salary=").append(Integer.toString(salary)).append('}');
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(40 + name.length())).toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        EmployeeRecord alice = new EmployeeRecord("Alice", "HR", 3000);
+        EmployeeRecord sameAlice = EmployeeRecord.of(new Employee("Alice", "HR", 3000));
+        System.out.println(alice); // Employee{name='Alice', department='HR', salary=3000}
+        System.out.println(alice.equals(sameAlice) + " " + (alice.hashCode() == sameAlice.hashCode())); // true true
+
+        Map<EmployeeRecord, String> reviews = new HashMap<>();
+        reviews.put(alice, "exceeds expectations");
+        System.out.println(reviews.get(sameAlice)); // exceeds expectations
+
+        // one reusable buffer for many log lines
+        StringBuilder line = new StringBuilder(128);
+        for (EmployeeRecord r : new EmployeeRecord[] {alice, new EmployeeRecord("Bob", "IT", 5000)}) {
+            line.setLength(0);
+            r.appendTo(line.append("payroll: "));
+            System.out.println(line);
+        }
+        alice.appendTo(System.out).append(System.lineSeparator());
+    }
+}
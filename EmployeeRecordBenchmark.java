@@ -0,0 +1,125 @@
+
+// EmployeeRecord against Employee / Java serialization
+//   serialize     - ObjectOutputStream vs EmployeeRecordCodec.Encoder into a reusable ByteBuffer
+//   deserialize   - ObjectInputStream vs EmployeeRecordCodec.Decoder
+//   toString      - Employee.toString vs EmployeeRecord.appendTo a reused StringBuilder
+// Per record: ns, bytes allocated (B/op) and, for the formats, bytes written.
+
+// Usage: java EmployeeRecordBenchmark [records] [output.json]
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+public class EmployeeRecordBenchmark {
+
+    static byte[] javaSerialize(List<EmployeeRecord> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 64);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (EmployeeRecord r : records) {
+                out.writeObject(r);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static int javaDeserialize(byte[] bytes, int count) {
+        int salaries = 0;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < count; i++) {
+                salaries += ((EmployeeRecord) in.readObject()).salary();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        return salaries;
+    }
+
+    // encodes into `buffer`, which is flushed (here: cleared) whenever it is full; returns bytes written
+    static long codecEncode(List<EmployeeRecord> records, ByteBuffer buffer) {
+        EmployeeRecordCodec.Encoder encoder = new EmployeeRecordCodec.Encoder();
+        long written = 0;
+        buffer.clear();
+        for (EmployeeRecord r : records) {
+            if (!encoder.encode(r, buffer)) {
+                written += buffer.position();
+                buffer.clear();
+                encoder.encode(r, buffer);
+            }
+        }
+        return written + buffer.position();
+    }
+
+    static int codecDecode(ByteBuffer encoded) {
+        EmployeeRecordCodec.Decoder decoder = new EmployeeRecordCodec.Decoder();
+        ByteBuffer in = encoded.duplicate();
+        int salaries = 0;
+        EmployeeRecord r;
+        while ((r = decoder.decode(in)) != null) {
+            salaries += r.salary();
+        }
+        return salaries;
+    }
+
+    public static void main(String a[]) throws IOException {
+        int count = a.length > 0 ? Integer.parseInt(a[0]) : 100_000;
+        String[] depts = {"HR", "IT", "Sales", "Finance", "Engineering", "Support", "Legal", "Marketing"};
+        SplittableRandom random = new SplittableRandom(19);
+        List<Employee> employees = new ArrayList<>(count);
+        List<EmployeeRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Employee e = new Employee("Employee" + i, depts[random.nextInt(depts.length)], 2000 + random.nextInt(8000));
+            employees.add(e);
+            records.add(EmployeeRecord.of(e));
+        }
+
+        byte[] javaBytes = javaSerialize(records);
+        ByteBuffer whole = ByteBuffer.allocate(count * 32);
+        long codecBytes = codecEncode(records, whole);
+        whole.flip();
+        System.out.printf("bytes per record: java serialization %.1f, codec %.1f%n",
+            (double) javaBytes.length / count, (double) codecBytes / count);
+        if (codecDecode(whole) != javaDeserialize(javaBytes, count)) {
+            throw new IllegalStateException("codec and java serialization disagree");
+        }
+
+        Bench bench = new Bench(20, 10);
+        Map<String, Object> params = Bench.params("records", count);
+        bench.run("serialize java", params, count, () -> Bench.consume(javaSerialize(records)));
+        ByteBuffer reusable = ByteBuffer.allocate(64 * 1024);
+        bench.run("serialize codec", params, count, () -> Bench.consume(codecEncode(records, reusable)));
+        bench.run("deserialize java", params, count, () -> Bench.consume(javaDeserialize(javaBytes, count)));
+        bench.run("deserialize codec", params, count, () -> Bench.consume(codecDecode(whole)));
+
+        bench.run("Employee.toString", params, count, () -> {
+            int length = 0;
+            for (Employee e : employees) {
+                length += e.toString().length();
+            }
+            Bench.consume(length);
+        });
+        StringBuilder line = new StringBuilder(128);
+        bench.run("EmployeeRecord.appendTo", params, count, () -> {
+            int length = 0;
+            for (EmployeeRecord r : records) {
+                line.setLength(0);
+                length += r.appendTo(line).length();
+            }
+            Bench.consume(length);
+        });
+        if (a.length > 1) {
+            bench.writeJson(Path.of(a[1]));
+        }
+    }
+}
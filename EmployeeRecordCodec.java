@@ -0,0 +1,246 @@
+
+// Compact binary format for EmployeeRecord, written to and read from a reusable ByteBuffer
+// Java serialization (ObjectOutputStream) writes class descriptors, field names and block
+// headers, and creates several objects per record on both sides. This format writes only
+// the data:
+//   varint    - an int in 7-bit groups, small numbers take 1 byte instead of 4
+//   zigzag    - maps small negative numbers to small varints too (salary)
+//   names     - byte length + bytes; pure ASCII names (the common case) are copied char by
+//               char with no intermediate byte[]
+//   departments - a department name is written once per stream, the first time it appears,
+//               together with a stream-local code; after that only the code is written.
+//               (Department ids are only valid inside one dictionary, so they are not written.)
+// Record: varint(code << 1 | newFlag) [varint(len) dept bytes] zigzag(salary) varint(len) name bytes
+// Encoder and Decoder keep the department codes of one stream; use one pair per stream.
+// Decoded departments go to the Decoder's own dictionary, a new one per Decoder unless the
+// caller passes one (e.g. the dictionary of the table the records are loaded into), never to
+// Department.GLOBAL: names from a file or the network must not stay in the JVM for good.
+// The decoder does not trust the stream. Each of these throws IllegalStateException: a code
+// that was never defined in the stream (a corrupt stream, or decoding with a Decoder that did
+// not see the start of it), codes defined out of order, and a string length that is negative
+// or above MAX_STRING_BYTES. The encoder refuses longer strings with IllegalArgumentException.
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public final class EmployeeRecordCodec {
+    public static final int MAX_STRING_BYTES = 64 * 1024;
+
+    private EmployeeRecordCodec() {
+    }
+
+    public static final class Encoder {
+        // stream code + 1 by department id for the dictionary of the first record (the usual
+        // case: all records share one dictionary), 0 = not written yet
+        private Department.Dictionary dictionary;
+        private int[] codesById = new int[16];
+        // stream codes of departments from any other dictionary
+        private final Map<Department, Integer> otherCodes = new HashMap<>();
+        private int nextCode;
+
+        // stream code of d, -1 if it was not written yet
+        private int code(Department d) {
+            if (dictionary == null) {
+                dictionary = d.dictionary();
+            }
+            if (d.dictionary() == dictionary) {
+                return d.id() < codesById.length ? codesById[d.id()] - 1 : -1;
+            }
+            Integer code = otherCodes.get(d);
+            return code != null ? code : -1;
+        }
+
+        private int define(Department d) {
+            int code = nextCode++;
+            if (d.dictionary() == dictionary) {
+                if (d.id() >= codesById.length) {
+                    codesById = Arrays.copyOf(codesById, Math.max(d.id() + 1, codesById.length * 2));
+                }
+                codesById[d.id()] = code + 1;
+            } else {
+                otherCodes.put(d, code);
+            }
+            return code;
+        }
+
+        // Largest number of bytes encode(r) can write
+        public static int maxEncodedSize(EmployeeRecord r) {
+            return 5 + 5 + 3 * r.departmentName().length() + 5 + 5 + 3 * r.name().length();
+        }
+
+        // Writes r at out's position. Returns false and writes nothing when out has too little
+        // room left; flush out and call again.
+        public boolean encode(EmployeeRecord r, ByteBuffer out) {
+            checkLength(r.departmentName());
+            checkLength(r.name());
+            int bound = maxEncodedSize(r);
+            if (out.remaining() < bound) {
+                if (out.capacity() < bound) {
+                    throw new IllegalArgumentException("Buffer of " + out.capacity() + " bytes is too small for " + bound + " byte record");
+                }
+                return false;
+            }
+            int code = code(r.department());
+            if (code < 0) {
+                putVarint(out, define(r.department()) << 1 | 1);
+                putString(out, r.departmentName());
+            } else {
+                putVarint(out, code << 1);
+            }
+            putVarint(out, r.salary() << 1 ^ r.salary() >> 31);
+            putString(out, r.name());
+            return true;
+        }
+    }
+
+    public static final class Decoder {
+        private final Department.Dictionary dictionary;
+        private Department[] departments = new Department[16]; // stream code -> Department
+        private int defined; // codes 0 .. defined - 1 are defined
+        private byte[] scratch = new byte[64];
+
+        // departments go to a new dictionary that lives as long as the decoded records
+        public Decoder() {
+            this(new Department.Dictionary(Integer.MAX_VALUE));
+        }
+
+        public Decoder(Department.Dictionary dictionary) {
+            this.dictionary = Objects.requireNonNull(dictionary, "dictionary");
+        }
+
+        public Department.Dictionary dictionary() {
+            return dictionary;
+        }
+
+        // Reads the record at in's position. Returns null and leaves the position unchanged
+        // when in holds only part of a record; compact, read more and call again.
+        public EmployeeRecord decode(ByteBuffer in) {
+            int start = in.position();
+            try {
+                int header = getVarint(in);
+                int code = header >>> 1;
+                String newDepartment = null;
+                if ((header & 1) != 0) {
+                    // the encoder numbers departments 0, 1, 2, ... in the order it writes them
+                    if (code != defined) {
+                        throw new IllegalStateException("Department code " + code + " defined out of order, expected " + defined);
+                    }
+                    newDepartment = getString(in);
+                } else if (code >= defined) {
+                    throw new IllegalStateException("Department code " + code + " used before it was defined in this stream");
+                }
+                int zigzag = getVarint(in);
+                int salary = zigzag >>> 1 ^ -(zigzag & 1);
+                String name = getString(in);
+                // only now: a partial record is read again from its start, its code must still be new then
+                if (newDepartment != null) {
+                    define(dictionary.intern(newDepartment));
+                }
+                return new EmployeeRecord(name, departments[code], salary);
+            } catch (BufferUnderflowException e) {
+                in.position(start);
+                return null;
+            }
+        }
+
+        private void define(Department department) {
+            if (defined == departments.length) {
+                departments = Arrays.copyOf(departments, defined * 2);
+            }
+            departments[defined++] = department;
+        }
+
+        private String getString(ByteBuffer in) {
+            int length = getVarint(in);
+            if (length < 0 || length > MAX_STRING_BYTES) {
+                throw new IllegalStateException("String length " + length + " outside 0.." + MAX_STRING_BYTES);
+            }
+            if (in.remaining() < length) {
+                throw new BufferUnderflowException();
+            }
+            if (in.hasArray()) {
+                String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                return s;
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            in.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void checkLength(String s) {
+        // a char is at most 3 UTF-8 bytes, so only long strings need to be measured
+        if (s.length() > MAX_STRING_BYTES / 3 && s.getBytes(StandardCharsets.UTF_8).length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String longer than " + MAX_STRING_BYTES + " UTF-8 bytes");
+        }
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    static void putString(ByteBuffer out, String s) {
+        int length = s.length();
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = s.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            putVarint(out, length);
+            for (int i = 0; i < length; i++) {
+                out.put((byte) s.charAt(i));
+            }
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putVarint(out, bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    public static void main(String[] args) {
+        EmployeeRecord[] employees = {
+            new EmployeeRecord("Alice", "HR", 3000),
+            new EmployeeRecord("Bob", "IT", 5000),
+            new EmployeeRecord("Charlie", "HR", 4000),
+            new EmployeeRecord("David", "IT", 6000),
+            new EmployeeRecord("Zo\u00eb", "IT", -1)
+        };
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        Encoder encoder = new Encoder();
+        for (EmployeeRecord e : employees) {
+            encoder.encode(e, buffer);
+        }
+        buffer.flip();
+        System.out.println(employees.length + " records in " + buffer.remaining() + " bytes"); // 5 records in 49 bytes
+
+        Decoder decoder = new Decoder();
+        for (EmployeeRecord e : employees) {
+            EmployeeRecord decoded = decoder.decode(buffer);
+            System.out.println(decoded + " equal: " + decoded.equals(e));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+
+// Off-heap employee store (Foreign Function & Memory API)
+// Objects on the Java heap are traced by the garbage collector; a heap full of millions of
+// Employee objects makes every full GC walk all of them. Off-heap (native) memory is not
+// traced at all: it holds plain bytes, so the heap stays small no matter how many rows
+// are stored, and GC pauses do not grow with the data.
+
+// The FFM API (package java.lang.foreign, preview in JDK 21, final in JDK 22):
+//   MemoryLayout  - describes the shape of a block of memory (structs, sequences, ints, longs)
+//   MemorySegment - a bounds-checked block of memory (here native memory), read and written
+//                   with get/set and a ValueLayout (JAVA_INT, JAVA_LONG, ...)
+//   Arena         - owns segments; close() frees all of them at once, deterministically
+// On JDK 21 compile and run with --enable-preview (build.gradle does); on JDK 22+ the same
+// code compiles without it.
+
+// Layout: rows are stored in chunks of ROWS_PER_CHUNK. Inside a chunk every field is its
+// own column (salaries next to each other), so a salary scan reads contiguous ints.
+// Names are variable length and live in separate name-heap chunks.
+// Department ids are ids in the store's own Department.Dictionary, so employee(row) hands out
+// the store's Department objects and nothing is added to Department.GLOBAL.
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Appends are single-threaded. After appending, the store can be read from any thread.
+@SuppressWarnings("preview") // java.lang.foreign is a preview API in JDK 21
+public class EmployeeStore implements AutoCloseable {
+    static final int ROWS_PER_CHUNK = 64 * 1024;
+    static final int NAME_HEAP_CHUNK_BYTES = 1 << 20;
+
+    static final MemoryLayout CHUNK = MemoryLayout.structLayout(
+        MemoryLayout.sequenceLayout(ROWS_PER_CHUNK, ValueLayout.JAVA_INT).withName("salary"),
+        MemoryLayout.sequenceLayout(ROWS_PER_CHUNK, ValueLayout.JAVA_INT).withName("department"),
+        MemoryLayout.sequenceLayout(ROWS_PER_CHUNK, ValueLayout.JAVA_LONG).withName("name"));
+    static final long SALARY_OFFSET = CHUNK.byteOffset(MemoryLayout.PathElement.groupElement("salary"));
+    static final long DEPARTMENT_OFFSET = CHUNK.byteOffset(MemoryLayout.PathElement.groupElement("department"));
+    static final long NAME_OFFSET = CHUNK.byteOffset(MemoryLayout.PathElement.groupElement("name"));
+
+    // shared: the store may be read, and closed, from any thread
+    private final Arena arena = Arena.ofShared();
+    private final List<MemorySegment> chunks = new ArrayList<>();
+    private final List<MemorySegment> nameHeap = new ArrayList<>();
+    private long size;
+    private long nameHeapUsed = NAME_HEAP_CHUNK_BYTES; // forces a name chunk on the first append
+    private final Department.Dictionary departments = new Department.Dictionary(Integer.MAX_VALUE);
+
+    public long append(Employee e) {
+        return append(e.getName(), e.getDepartment(), e.getSalary());
+    }
+
+    public long append(String name, String department, int salary) {
+        return append(name, departments.intern(department).id(), salary);
+    }
+
+    private long append(String name, int departmentId, int salary) {
+        if (!arena.scope().isAlive()) {
+            throw new IllegalStateException("EmployeeStore is closed");
+        }
+        int index = (int) (size % ROWS_PER_CHUNK);
+        if (index == 0) {
+            chunks.add(arena.allocate(CHUNK));
+        }
+        MemorySegment chunk = chunks.get(chunks.size() - 1);
+        chunk.set(ValueLayout.JAVA_INT, SALARY_OFFSET + 4L * index, salary);
+        chunk.set(ValueLayout.JAVA_INT, DEPARTMENT_OFFSET + 4L * index, departmentId);
+        chunk.set(ValueLayout.JAVA_LONG, NAME_OFFSET + 8L * index, storeName(name));
+        return size++;
+    }
+
+    // Copies the name into the name heap: 2 byte length (not aligned) + UTF-8 bytes.
+    // Returns (name chunk index << 32) | offset inside that chunk.
+    private long storeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Name longer than " + Short.MAX_VALUE + " bytes");
+        }
+        if (nameHeapUsed + 2 + bytes.length > NAME_HEAP_CHUNK_BYTES) {
+            nameHeap.add(arena.allocate(NAME_HEAP_CHUNK_BYTES));
+            nameHeapUsed = 0;
+        }
+        MemorySegment heap = nameHeap.get(nameHeap.size() - 1);
+        long offset = nameHeapUsed;
+        heap.set(ValueLayout.JAVA_SHORT_UNALIGNED, offset, (short) bytes.length);
+        MemorySegment.copy(bytes, 0, heap, ValueLayout.JAVA_BYTE, offset + 2, bytes.length);
+        nameHeapUsed += 2 + bytes.length;
+        return ((long) (nameHeap.size() - 1) << 32) | offset;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Native memory reserved by this store
+    public long nativeBytes() {
+        return chunks.size() * CHUNK.byteSize() + (long) nameHeap.size() * NAME_HEAP_CHUNK_BYTES;
+    }
+
+    private MemorySegment chunk(long row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return chunks.get((int) (row / ROWS_PER_CHUNK));
+    }
+
+    public int salary(long row) {
+        return chunk(row).get(ValueLayout.JAVA_INT, SALARY_OFFSET + 4L * (row % ROWS_PER_CHUNK));
+    }
+
+    public int departmentId(long row) {
+        return chunk(row).get(ValueLayout.JAVA_INT, DEPARTMENT_OFFSET + 4L * (row % ROWS_PER_CHUNK));
+    }
+
+    public String name(long row) {
+        long ref = chunk(row).get(ValueLayout.JAVA_LONG, NAME_OFFSET + 8L * (row % ROWS_PER_CHUNK));
+        MemorySegment heap = nameHeap.get((int) (ref >>> 32));
+        long offset = ref & 0xFFFFFFFFL;
+        int length = heap.get(ValueLayout.JAVA_SHORT_UNALIGNED, offset);
+        return new String(heap.asSlice(offset + 2, length).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    public Employee employee(long row) {
+        return new Employee(name(row), departments.get(departmentId(row)), salary(row));
+    }
+
+    // Rows in the given chunk; every chunk but the last is full
+    private int rowsIn(int chunkIndex) {
+        return (int) Math.min(ROWS_PER_CHUNK, size - (long) chunkIndex * ROWS_PER_CHUNK);
+    }
+
+    // Scans: per chunk a simple counted loop over contiguous int columns
+
+    public long[] salarySumById() {
+        long[] sums = new long[departments.size()];
+        for (int c = 0; c < chunks.size(); c++) {
+            MemorySegment salaries = chunks.get(c).asSlice(SALARY_OFFSET);
+            MemorySegment departments = chunks.get(c).asSlice(DEPARTMENT_OFFSET);
+            for (int i = 0, n = rowsIn(c); i < n; i++) {
+                sums[departments.getAtIndex(ValueLayout.JAVA_INT, i)] += salaries.getAtIndex(ValueLayout.JAVA_INT, i);
+            }
+        }
+        return sums;
+    }
+
+    public long[] countById() {
+        long[] counts = new long[departments.size()];
+        for (int c = 0; c < chunks.size(); c++) {
+            MemorySegment departments = chunks.get(c).asSlice(DEPARTMENT_OFFSET);
+            for (int i = 0, n = rowsIn(c); i < n; i++) {
+                counts[departments.getAtIndex(ValueLayout.JAVA_INT, i)]++;
+            }
+        }
+        return counts;
+    }
+
+    public long totalSalary() {
+        long total = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            MemorySegment salaries = chunks.get(c).asSlice(SALARY_OFFSET);
+            for (int i = 0, n = rowsIn(c); i < n; i++) {
+                total += salaries.getAtIndex(ValueLayout.JAVA_INT, i);
+            }
+        }
+        return total;
+    }
+
+    // first row with the highest salary, -1 if empty
+    public long maxSalaryRow() {
+        long best = -1;
+        int bestSalary = Integer.MIN_VALUE;
+        for (int c = 0; c < chunks.size(); c++) {
+            MemorySegment salaries = chunks.get(c).asSlice(SALARY_OFFSET);
+            for (int i = 0, n = rowsIn(c); i < n; i++) {
+                int salary = salaries.getAtIndex(ValueLayout.JAVA_INT, i);
+                if (best < 0 || salary > bestSalary) {
+                    best = (long) c * ROWS_PER_CHUNK + i;
+                    bestSalary = salary;
+                }
+            }
+        }
+        return best;
+    }
+
+    public Map<String, Integer> totalSalariesByDept() {
+        long[] sums = salarySumById();
+        long[] counts = countById();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int id = 0; id < sums.length; id++) {
+            if (counts[id] > 0) {
+                result.put(departments.get(id).name(), (int) sums[id]);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Long> employeeCountByDept() {
+        long[] counts = countById();
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                result.put(departments.get(id).name(), counts[id]);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Double> avgSalaryByDept() {
+        long[] sums = salarySumById();
+        long[] counts = countById();
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int id = 0; id < sums.length; id++) {
+            if (counts[id] > 0) {
+                result.put(departments.get(id).name(), (double) sums[id] / counts[id]);
+            }
+        }
+        return result;
+    }
+
+    // Frees all native memory right away. Any later access fails with IllegalStateException.
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    public static void main(String a[]) {
+        try (EmployeeStore store = new EmployeeStore()) {
+            store.append(new Employee("Alice", "HR", 3000));
+            store.append(new Employee("Bob", "IT", 5000));
+            store.append(new Employee("Charlie", "HR", 4000));
+            store.append(new Employee("David", "IT", 6000));
+            System.out.println(store.totalSalariesByDept()); // {HR=7000, IT=11000}
+            System.out.println(store.employeeCountByDept()); // {HR=2, IT=2}
+            System.out.println(store.avgSalaryByDept());     // {HR=3500.0, IT=5500.0}
+            System.out.println("Highest Paid Employee: " + store.employee(store.maxSalaryRow()));
+        }
+
+        // Heap stays flat while the row count grows
+        int rows = a.length > 0 ? Integer.parseInt(a[0]) : 10_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        EmployeeStore store = new EmployeeStore();
+        String[] depts = {"HR", "IT", "Sales", "Finance"};
+        for (int i = 0; i < rows; i++) {
+            store.append("Employee" + i, depts[i % depts.length], 2000 + i % 8000);
+            if ((i + 1) % Math.max(1, rows / 4) == 0) {
+                System.gc();
+                System.out.printf("%,d rows: heap used %d MB, native %d MB%n", i + 1,
+                    (runtime.totalMemory() - runtime.freeMemory()) >> 20, store.nativeBytes() >> 20);
+            }
+        }
+        long start = System.nanoTime();
+        Map<String, Integer> totals = store.totalSalariesByDept();
+        System.out.println(totals + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        store.close();
+        try {
+            store.salary(0);
+        } catch (IllegalStateException e) {
+            System.out.println("after close: " + e.getMessage());
+        }
+    }
+}
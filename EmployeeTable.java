@@ -0,0 +1,286 @@
+
+// A columnar (column-oriented) table keeps each field of a record in its own array
+// instead of keeping one object per row. A List<Employee> is a list of pointers to
+// Employee objects, and every Employee points again to two String objects, so an
+// aggregation over the list jumps around the heap for every single row.
+// With columns the salary values sit next to each other in one int[] and a loop over
+// them reads memory sequentially, which the CPU caches and prefetches very well.
+
+// Dictionary encoding: a column with few distinct values (like department) is stored
+// as small int codes plus one dictionary (code -> name). "HR" is stored once, not once per row.
+// The dictionary is the table's own Department.Dictionary, so codes are Department ids and
+// employee(row) hands out the table's Department objects without touching Department.GLOBAL.
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class EmployeeTable {
+    private int size;
+    private int[] salaries;
+    private int[] deptCodes;
+
+    // department dictionary: name -> code and code -> name
+    private final Department.Dictionary departments = new Department.Dictionary(Integer.MAX_VALUE);
+
+    // names packed one after another in a single byte[] (UTF-8),
+    // row i lives in nameBytes[nameOffsets[i] .. nameOffsets[i + 1])
+    private byte[] nameBytes;
+    private int[] nameOffsets;
+
+    public EmployeeTable() {
+        this(16);
+    }
+
+    public EmployeeTable(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        salaries = new int[capacity];
+        deptCodes = new int[capacity];
+        nameOffsets = new int[capacity + 1];
+        nameBytes = new byte[capacity * 8];
+    }
+
+    public static EmployeeTable from(List<Employee> employees) {
+        EmployeeTable table = new EmployeeTable(employees.size());
+        for (Employee e : employees) {
+            table.add(e.getName(), e.getDepartment(), e.getSalary());
+        }
+        return table;
+    }
+
+    public void add(String name, String department, int salary) {
+        if (size == salaries.length) {
+            int capacity = size * 2;
+            salaries = Arrays.copyOf(salaries, capacity);
+            deptCodes = Arrays.copyOf(deptCodes, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+        }
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int start = nameOffsets[size];
+        if (start + encoded.length > nameBytes.length) {
+            nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, start + encoded.length));
+        }
+        System.arraycopy(encoded, 0, nameBytes, start, encoded.length);
+
+        salaries[size] = salary;
+        deptCodes[size] = deptCode(department);
+        nameOffsets[size + 1] = start + encoded.length;
+        size++;
+    }
+
+    // returns the code of a department, adding it to the dictionary the first time it is seen
+    int deptCode(String department) {
+        return departments.intern(department).id();
+    }
+
+    // code of a department, -1 if it was never registered. A registered department can have
+    // no rows: deptCode() registers it before its first row is added.
+    public int departmentCode(String department) {
+        Department d = departments.find(department);
+        return d != null ? d.id() : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int departmentCount() {
+        return departments.size();
+    }
+
+    public String departmentName(int code) {
+        return departments.get(code).name();
+    }
+
+    public String name(int row) {
+        int start = nameOffsets[row];
+        return new String(nameBytes, start, nameOffsets[row + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    public String department(int row) {
+        return departmentName(deptCodes[row]);
+    }
+
+    public int salary(int row) {
+        return salaries[row];
+    }
+
+    // Builds an Employee object for one row (only when an object is really needed)
+    public Employee employee(int row) {
+        return new Employee(name(row), departments.get(deptCodes[row]), salaries[row]);
+    }
+
+    // Raw columns for other column-based operators in this repo. Only the first size() entries are valid.
+    int[] salaryColumn() {
+        return salaries;
+    }
+
+    int[] deptColumn() {
+        return deptCodes;
+    }
+
+    // Primitive queries: one tight loop over the arrays, indexed by department code
+
+    public long[] salarySumByDeptCode() {
+        long[] sums = new long[departmentCount()];
+        for (int i = 0; i < size; i++) {
+            sums[deptCodes[i]] += salaries[i];
+        }
+        return sums;
+    }
+
+    public long[] countByDeptCode() {
+        long[] counts = new long[departmentCount()];
+        for (int i = 0; i < size; i++) {
+            counts[deptCodes[i]]++;
+        }
+        return counts;
+    }
+
+    // row with the highest salary (first one wins on ties, like Stream.max), -1 if empty
+    public int maxSalaryRow() {
+        int best = -1;
+        int bestSalary = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (best < 0 || salaries[i] > bestSalary) {
+                best = i;
+                bestSalary = salaries[i];
+            }
+        }
+        return best;
+    }
+
+    // Same answers as the Collectors examples in Employee.main
+
+    // groupingBy(getDepartment, summingInt(getSalary)) - summingInt adds in an int, so overflow wraps the same way
+    public Map<String, Integer> totalSalariesByDept() {
+        long[] sums = salarySumByDeptCode();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            result.put(departmentName(code), (int) sums[code]);
+        }
+        return result;
+    }
+
+    // groupingBy(getDepartment, counting())
+    public Map<String, Long> employeeCountByDept() {
+        long[] counts = countByDeptCode();
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            result.put(departmentName(code), counts[code]);
+        }
+        return result;
+    }
+
+    // groupingBy(getDepartment, averagingInt(getSalary))
+    public Map<String, Double> avgSalaryByDept() {
+        long[] sums = salarySumByDeptCode();
+        long[] counts = countByDeptCode();
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            result.put(departmentName(code), (double) sums[code] / counts[code]);
+        }
+        return result;
+    }
+
+    public String deptWithMostEmployees() {
+        long[] counts = countByDeptCode();
+        int best = -1;
+        for (int code = 0; code < counts.length; code++) {
+            if (best < 0 || counts[code] > counts[best]) {
+                best = code;
+            }
+        }
+        return best < 0 ? "No Department" : departmentName(best);
+    }
+
+    public Employee highestPaidEmployee() {
+        int row = maxSalaryRow();
+        return row < 0 ? null : employee(row);
+    }
+
+    // Memory footprint
+    // Estimates assume a 64-bit JVM with compressed oops: 12 byte object header,
+    // 4 byte references, 16 byte array header, everything rounded up to 8 bytes.
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static long stringBytes(String s) {
+        // String object (header + hash + coder + value ref) + its byte[] (Latin-1 for ASCII names)
+        return align(12 + 4 + 1 + 1 + 4) + align(16 + s.length());
+    }
+
+    // one interned department: Department object (header + name ref + id + dictionary ref),
+    // its name, the dictionary's map node and a few bytes of map table and id array slots
+    private static long departmentBytes(Department d) {
+        return align(12 + 4 + 4 + 4) + stringBytes(d.name()) + align(12 + 4 + 4 + 4 + 4) + 8;
+    }
+
+    public long estimatedBytes() {
+        long bytes = align(16 + 4L * salaries.length)
+            + align(16 + 4L * deptCodes.length)
+            + align(16 + 4L * nameOffsets.length)
+            + align(16 + nameBytes.length);
+        for (int code = 0; code < departmentCount(); code++) {
+            bytes += departmentBytes(departments.get(code));
+        }
+        return bytes;
+    }
+
+    public static long estimatedBytes(List<Employee> employees) {
+        // reference slot in the list's backing array
+        long bytes = align(16 + 4L * employees.size());
+        Set<Department> departments = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Employee e : employees) {
+            // Employee object: header + 2 refs + int; the Department is shared, counted once below
+            bytes += align(12 + 4 + 4 + 4);
+            bytes += stringBytes(e.getName());
+            departments.add(e.getInternedDepartment());
+        }
+        for (Department d : departments) {
+            bytes += departmentBytes(d);
+        }
+        return bytes;
+    }
+
+    public static void main(String a[]) {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        EmployeeTable table = EmployeeTable.from(employees);
+
+        System.out.println(table.totalSalariesByDept());   // {HR=7000, IT=11000}
+        System.out.println(table.employeeCountByDept());   // {HR=2, IT=2}
+        System.out.println(table.avgSalaryByDept());       // {HR=3500.0, IT=5500.0}
+        System.out.println("Highest Paid Employee: " + table.highestPaidEmployee());
+
+        // Memory footprint with realistic row counts. Department strings read from a file are
+        // separate String objects per row, but Employee interns them (Department.java), so the
+        // List keeps one shared Department per name. It still pays an object and a String per row.
+        int rows = 1_000_000;
+        String[] depts = {"HR", "IT", "Sales", "Finance", "Legal"};
+        java.util.ArrayList<Employee> list = new java.util.ArrayList<>(rows);
+        EmployeeTable big = new EmployeeTable(rows);
+        for (int i = 0; i < rows; i++) {
+            String name = "Employee" + i;
+            String dept = new String(depts[i % depts.length]);
+            int salary = 3000 + (i % 5000);
+            list.add(new Employee(name, dept, salary));
+            big.add(name, dept, salary);
+        }
+        long listBytes = estimatedBytes(list);
+        long tableBytes = big.estimatedBytes();
+        System.out.println("List<Employee> : ~" + listBytes / (1024 * 1024) + " MB (" + listBytes / rows + " bytes/row)");
+        System.out.println("EmployeeTable  : ~" + tableBytes / (1024 * 1024) + " MB (" + tableBytes / rows + " bytes/row)");
+    }
+}
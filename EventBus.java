@@ -0,0 +1,401 @@
+
+// Event bus built from the Observer pattern in Notes.Java (NewsAgency / Observer)
+// NewsAgency keeps observers in a plain ArrayList (not safe when threads subscribe while
+// others publish) and calls every update() on the publishing thread, so one slow
+// subscriber stalls every publisher. Here:
+//   registry   - subscribers are an immutable array swapped with compareAndSet (copy-on-write):
+//                publishing reads it without a lock, subscribing copies it
+//   ring buffer - every subscriber has its own bounded queue; publish() only puts the event
+//                in the queues and returns
+//   delivery   - a subscriber with queued events is scheduled on the executor, which hands
+//                it up to maxBatch events in one call. One subscriber is never delivered to
+//                by two threads at once, so events arrive in publish order. Pass a virtual
+//                thread executor (TaskRunner.virtual().executor()) instead of the default
+//                pool of platform threads.
+//   overflow   - what publish() does when a subscriber's queue is full:
+//                DROP     - the new event is dropped for that subscriber only
+//                BLOCK    - the publisher waits until there is room (back-pressure)
+//                COALESCE - the queue is kept, newer events replace each other in one extra
+//                           slot, so the subscriber catches up with the latest state
+//   closing    - close() stops delivery; publish() and subscribe() on a closed bus throw
+//                IllegalStateException. A caller's executor that is shut down while the bus is
+//                still open makes publish() throw its RejectedExecutionException.
+//   metrics    - publish latency histogram; per subscriber published, delivered, dropped and
+//                lag (published but not yet delivered or dropped)
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class EventBus<E> implements AutoCloseable {
+    public enum OverflowPolicy { DROP, BLOCK, COALESCE }
+
+    // Receives events in batches; the list is only valid during the call
+    public interface BatchObserver<E> {
+        void update(List<E> events);
+    }
+
+    private final AtomicReference<Subscription<E>[]> subscribers;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private volatile boolean closed;
+
+    // delivery on a pool of daemon platform threads, one per core
+    public EventBus() {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreads()), true);
+    }
+
+    // delivery on the given executor, which the caller shuts down
+    public EventBus(ExecutorService executor) {
+        this(executor, false);
+    }
+
+    @SuppressWarnings("unchecked") // no generic arrays: Subscription<E>[] erases to Subscription[] anyway
+    private EventBus(ExecutorService executor, boolean ownsExecutor) {
+        this.subscribers = new AtomicReference<>((Subscription<E>[]) new Subscription<?>[0]);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    private static final class DaemonThreads implements ThreadFactory {
+        private final AtomicInteger number = new AtomicInteger();
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "event-bus-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public Subscription<E> subscribe(String name, int capacity, int maxBatch, OverflowPolicy policy, BatchObserver<E> observer) {
+        checkOpen();
+        Subscription<E> subscription = new Subscription<>(this, name, capacity, maxBatch, policy, observer);
+        Subscription<E>[] current;
+        Subscription<E>[] next;
+        do {
+            current = subscribers.get();
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = subscription;
+        } while (!subscribers.compareAndSet(current, next));
+        return subscription;
+    }
+
+    void unsubscribe(Subscription<E> subscription) {
+        Subscription<E>[] current;
+        Subscription<E>[] next;
+        do {
+            current = subscribers.get();
+            int index = Arrays.asList(current).indexOf(subscription);
+            if (index < 0) {
+                return;
+            }
+            next = Arrays.copyOf(current, current.length - 1);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        } while (!subscribers.compareAndSet(current, next));
+    }
+
+    public void publish(E event) {
+        checkOpen();
+        long start = System.nanoTime();
+        for (Subscription<E> subscription : subscribers.get()) {
+            subscription.offer(event);
+        }
+        publishLatency.record(System.nanoTime() - start);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("EventBus is closed");
+        }
+    }
+
+    public LatencyHistogram.Snapshot publishLatency() {
+        return publishLatency.snapshot();
+    }
+
+    public List<Subscription<E>> subscriptions() {
+        return List.of(subscribers.get());
+    }
+
+    // Stops delivery to every subscriber. Events still queued are dropped, not delivered;
+    // only a batch that is already inside an observer finishes.
+    @Override
+    public void close() {
+        closed = true;
+        for (Subscription<E> subscription : subscribers.get()) {
+            subscription.close();
+        }
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    public static final class Subscription<E> implements AutoCloseable {
+        private final EventBus<E> bus;
+        private final String name;
+        private final int maxBatch;
+        private final OverflowPolicy policy;
+        private final BatchObserver<E> observer;
+        private final RingBuffer<E> queue;
+        private final AtomicReference<E> coalesced = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final List<E> batch;
+        private volatile boolean active = true;
+
+        private final LongAdder published = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile long delivered; // written only by the delivering thread
+
+        Subscription(EventBus<E> bus, String name, int capacity, int maxBatch, OverflowPolicy policy, BatchObserver<E> observer) {
+            this.bus = bus;
+            this.name = name;
+            this.maxBatch = maxBatch;
+            this.policy = policy;
+            this.observer = observer;
+            this.queue = new RingBuffer<>(capacity);
+            this.batch = new ArrayList<>(maxBatch + 1);
+        }
+
+        void offer(E event) {
+            if (!active) {
+                return;
+            }
+            published.increment();
+            // while an event waits in the coalesce slot, newer ones go there too, so the
+            // slot is always newer than everything in the queue
+            if (policy == OverflowPolicy.COALESCE && coalesced.get() != null || !queue.offer(event)) {
+                overflow(event);
+            }
+            schedule();
+        }
+
+        private void overflow(E event) {
+            switch (policy) {
+                case DROP:
+                    dropped.increment();
+                    break;
+                case COALESCE:
+                    if (coalesced.getAndSet(event) != null) {
+                        dropped.increment();
+                    }
+                    break;
+                case BLOCK:
+                    while (!queue.offer(event)) {
+                        if (!active) {
+                            dropped.increment();
+                            return;
+                        }
+                        schedule();
+                        LockSupport.parkNanos(10_000);
+                    }
+                    break;
+            }
+        }
+
+        // Throws RejectedExecutionException when the executor is shut down. The flag is cleared
+        // first: left set, no later publish would ever schedule this subscriber again.
+        private void schedule() {
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    bus.executor.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        private void deliver() {
+            try {
+                E event;
+                while (batch.size() < maxBatch && (event = queue.poll()) != null) {
+                    batch.add(event);
+                }
+                if (batch.size() < maxBatch) {
+                    E latest = coalesced.getAndSet(null);
+                    if (latest != null) {
+                        batch.add(latest);
+                    }
+                }
+                if (!active) {
+                    dropped.add(batch.size());
+                } else if (!batch.isEmpty()) {
+                    try {
+                        observer.update(Collections.unmodifiableList(batch));
+                    } catch (RuntimeException e) {
+                        failures.increment();
+                    }
+                    delivered += batch.size();
+                }
+            } finally {
+                batch.clear();
+                scheduled.set(false);
+                if (active && (!queue.isEmpty() || coalesced.get() != null)) {
+                    try {
+                        schedule();
+                    } catch (RejectedExecutionException e) {
+                        // executor shut down: the events stay queued, the next publish() throws
+                    }
+                }
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long published() {
+            return published.sum();
+        }
+
+        public long delivered() {
+            return delivered;
+        }
+
+        public long dropped() {
+            return dropped.sum();
+        }
+
+        // batches whose observer threw; their events count as delivered
+        public long failures() {
+            return failures.sum();
+        }
+
+        // events published to this subscriber that are neither delivered nor dropped yet
+        public long lag() {
+            return Math.max(0, published.sum() - delivered - dropped.sum());
+        }
+
+        @Override
+        public void close() {
+            active = false;
+            bus.unsubscribe(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: published=%d delivered=%d dropped=%d lag=%d", name, published(), delivered(), dropped(), lag());
+        }
+    }
+
+    // Bounded multi-producer, single-consumer queue. Every slot has a sequence number that
+    // tells producers and the consumer whose turn it is, so there are no locks: a producer
+    // claims a slot with one compareAndSet on the tail, the consumer needs no atomic update.
+    static final class RingBuffer<E> {
+        private final AtomicReferenceArray<E> slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head; // only the consumer writes
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            slots = new AtomicReferenceArray<>(size);
+            sequences = new AtomicLongArray(size);
+            mask = size - 1;
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(E element) {
+            long position;
+            while (true) {
+                position = tail.get();
+                long sequence = sequences.get((int) position & mask);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        break;
+                    }
+                } else if (sequence < position) {
+                    return false; // the consumer has not freed this slot yet: full
+                }
+            }
+            int index = (int) position & mask;
+            slots.lazySet(index, element);
+            sequences.set(index, position + 1);
+            return true;
+        }
+
+        E poll() {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return null;
+            }
+            E element = slots.get(index);
+            slots.lazySet(index, null);
+            sequences.set(index, position + mask + 1);
+            head = position + 1;
+            return element;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) head & mask) != head + 1;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        EventBus<String> agency = new EventBus<>();
+        agency.subscribe("Alice", 1024, 64, OverflowPolicy.DROP,
+            events -> events.forEach(message -> System.out.println("Alice received: " + message)));
+        agency.subscribe("Bob", 1024, 64, OverflowPolicy.DROP,
+            events -> events.forEach(message -> System.out.println("Bob received: " + message)));
+        agency.publish("Breaking News!");
+        Thread.sleep(100);
+        agency.close();
+        try {
+            agency.publish("Too late");
+        } catch (IllegalStateException e) {
+            System.out.println("publish after close: " + e.getMessage());
+        }
+
+        // one slow subscriber does not slow down publishing or the fast subscribers
+        try (EventBus<Integer> bus = new EventBus<>()) {
+            BatchObserver<Integer> slow = events -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            for (int i = 0; i < 100; i++) {
+                bus.subscribe("fast-" + i, 1024, 256, OverflowPolicy.BLOCK, events -> { });
+            }
+            Subscription<Integer> dropping = bus.subscribe("slow-drop", 64, 16, OverflowPolicy.DROP, slow);
+            AtomicLong lastSeen = new AtomicLong();
+            Subscription<Integer> coalescing = bus.subscribe("slow-coalesce", 64, 16, OverflowPolicy.COALESCE,
+                events -> {
+                    slow.update(events);
+                    lastSeen.set(events.get(events.size() - 1));
+                });
+            long start = System.nanoTime();
+            int events = 200_000;
+            for (int i = 1; i <= events; i++) {
+                bus.publish(i);
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%,d events to %d subscribers in %d ms%n", events, bus.subscriptions().size(), nanos / 1_000_000);
+            System.out.println("publish latency ns: " + bus.publishLatency());
+            Thread.sleep(200);
+            System.out.println(bus.subscriptions().get(0));
+            System.out.println(dropping);
+            System.out.println(coalescing + ", last event seen: " + lastSeen.get()); // 200000, the latest
+        }
+    }
+}
@@ -0,0 +1,515 @@
+
+// External (spill-to-disk) groupingBy for more employees than fit in memory
+// Collectors.groupingBy(Employee::getDepartment) keeps every group in one HashMap, so the
+// whole data set has to fit in the heap. ExternalGroupBy keeps records in memory only up to
+// `memoryBudgetBytes`. Past that it hash-partitions them into `partitions` run files:
+//   all records with the same key land in the same file, so every file can later be grouped
+//   on its own, and only one file at a time has to fit in memory.
+// Phases (each reports records/sec and MB/sec):
+//   partition   - records are appended to the run file of hash(key) through a write buffer
+//                 per file (sequential FileChannel writes of writeBufferBytes)
+//   repartition - a run file that is still larger than the budget is split again with a
+//                 different hash seed, up to MAX_DEPTH times. A file that holds one single
+//                 key cannot be split and is grouped anyway; keys that only collide under
+//                 one seed are split by the next.
+//   aggregate   - each run file is read back sequentially (readBufferBytes at a time) and
+//                 grouped in memory with the downstream collector; the result of every key
+//                 goes to a sink as soon as its file is done, and the file is deleted
+// Heap estimate, the same for buffered records and run files: RECORD_OVERHEAD_BYTES plus the
+// UTF-8 bytes of the name per record. Departments and keys are shared by many records.
+// Heap needed: memoryBudgetBytes + partitions * writeBufferBytes + the downstream results of
+// one partition. With summingInt/counting that is tiny, with toList() it is the partition.
+// The downstream collector sees the same name, department and salary on both paths. Spilled
+// employees are rebuilt with a Department.Dictionary per run file, dropped after the file is
+// grouped, so reading back high-cardinality departments does not fill Department.GLOBAL.
+
+// Run file record: u16 length + UTF-8 bytes of name, department and key, then int salary (big-endian).
+// A key length of 0xFFFF means "the key is the department" (grouping by department, the usual
+// case) and no key bytes follow, so that case does not write the department twice.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+public class ExternalGroupBy implements AutoCloseable {
+    // rough heap size of one buffered Employee plus its list slot, without the name bytes
+    private static final int RECORD_OVERHEAD_BYTES = 88;
+    private static final int MAX_DEPTH = 4;
+    private static final int KEY_IS_DEPARTMENT = 0xFFFF;
+
+    private final Function<Employee, String> classifier;
+    private final long memoryBudgetBytes;
+    private final int partitions;
+    private final int writeBufferBytes;
+    private final int readBufferBytes;
+    private final Path directory;
+
+    private final ArrayList<Employee> buffered = new ArrayList<>();
+    private long bufferedBytes;
+    private PartitionWriter spill; // null until the budget is exceeded
+    private final List<Phase> phases = new ArrayList<>();
+    private Phase partitionPhase;
+
+    // Throughput of one phase
+    public static final class Phase {
+        public final String name;
+        long records;
+        long bytes;
+        long nanos;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public double recordsPerSecond() {
+            return nanos == 0 ? 0 : records * 1e9 / nanos;
+        }
+
+        public double megabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %,12d records %,8d MB %8d ms %,12.0f rec/s %8.1f MB/s",
+                name, records, bytes >> 20, nanos / 1_000_000, recordsPerSecond(), megabytesPerSecond());
+        }
+    }
+
+    public ExternalGroupBy(Function<Employee, String> classifier, long memoryBudgetBytes, Path tempParent) throws IOException {
+        this(classifier, memoryBudgetBytes, 64, 64 * 1024, 1 << 20, tempParent);
+    }
+
+    // partitions is rounded up to a power of two
+    public ExternalGroupBy(Function<Employee, String> classifier, long memoryBudgetBytes, int partitions,
+                           int writeBufferBytes, int readBufferBytes, Path tempParent) throws IOException {
+        if (memoryBudgetBytes <= 0 || partitions < 2 || writeBufferBytes < 1024 || readBufferBytes < 1024) {
+            throw new IllegalArgumentException("memoryBudgetBytes > 0, partitions >= 2 and buffers >= 1024 bytes required");
+        }
+        this.classifier = Objects.requireNonNull(classifier);
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.partitions = Integer.highestOneBit(partitions - 1) << 1;
+        this.writeBufferBytes = writeBufferBytes;
+        this.readBufferBytes = readBufferBytes;
+        this.directory = Files.createTempDirectory(tempParent, "groupby");
+    }
+
+    public void add(Employee e) throws IOException {
+        if (spill != null) {
+            long start = System.nanoTime();
+            spill.write(e, classifier.apply(e));
+            partitionPhase.nanos += System.nanoTime() - start;
+            return;
+        }
+        buffered.add(e);
+        bufferedBytes += heapEstimate(1, utf8Length(e.getName()));
+        if (bufferedBytes > memoryBudgetBytes) {
+            partitionPhase = new Phase("partition");
+            phases.add(partitionPhase);
+            long start = System.nanoTime();
+            spill = new PartitionWriter("run", 0);
+            for (Employee b : buffered) {
+                spill.write(b, classifier.apply(b));
+            }
+            buffered.clear();
+            buffered.trimToSize();
+            bufferedBytes = 0;
+            partitionPhase.nanos += System.nanoTime() - start;
+        }
+    }
+
+    // Groups everything added so far: sink gets (key, downstream result) once per key, keys of
+    // one partition together, partitions one after the other (no global key order).
+    public <A, R> void finish(Collector<Employee, A, R> downstream, BiConsumer<String, R> sink) throws IOException {
+        if (spill == null) {
+            Phase phase = new Phase("aggregate");
+            phases.add(phase);
+            long start = System.nanoTime();
+            Map<String, A> groups = new HashMap<>();
+            for (Employee e : buffered) {
+                downstream.accumulator().accept(groups.computeIfAbsent(classifier.apply(e), k -> downstream.supplier().get()), e);
+            }
+            phase.records = buffered.size();
+            emit(groups, downstream, sink);
+            buffered.clear();
+            phase.nanos = System.nanoTime() - start;
+            return;
+        }
+        long start = System.nanoTime();
+        spill.close();
+        partitionPhase.nanos += System.nanoTime() - start;
+        partitionPhase.records = spill.totalRecords();
+        partitionPhase.bytes = spill.totalBytes();
+        for (int p = 0; p < partitions; p++) {
+            process(spill.files[p], spill.records[p], spill.nameBytes[p], 1, downstream, sink);
+        }
+        spill = null;
+    }
+
+    private <A, R> void process(Path file, long records, long nameBytes, int depth, Collector<Employee, A, R> downstream,
+                                BiConsumer<String, R> sink) throws IOException {
+        if (records == 0) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        long fileBytes = Files.size(file);
+        if (heapEstimate(records, nameBytes) > memoryBudgetBytes && depth <= MAX_DEPTH) {
+            Phase phase = phase("repartition");
+            long start = System.nanoTime();
+            PartitionWriter writer = new PartitionWriter("run" + depth + "-" + file.getFileName(), depth);
+            try (RecordReader reader = new RecordReader(file)) {
+                while (reader.next()) {
+                    writer.write(reader.name, reader.department, reader.key, reader.salary);
+                }
+            }
+            writer.close();
+            Files.delete(file);
+            phase.records += records;
+            phase.bytes += fileBytes;
+            phase.nanos += System.nanoTime() - start;
+            // every record has the same key: splitting again cannot help. Different keys that
+            // all hashed to one partition go on with the next seed.
+            int next = writer.singleKey() ? MAX_DEPTH + 1 : depth + 1;
+            for (int p = 0; p < partitions; p++) {
+                process(writer.files[p], writer.records[p], writer.nameBytes[p], next, downstream, sink);
+            }
+            return;
+        }
+        Phase phase = phase("aggregate");
+        long start = System.nanoTime();
+        Map<String, A> groups = new HashMap<>();
+        Department.Dictionary departments = new Department.Dictionary(Integer.MAX_VALUE);
+        try (RecordReader reader = new RecordReader(file)) {
+            while (reader.next()) {
+                Employee e = new Employee(reader.name, departments.intern(reader.department), reader.salary);
+                downstream.accumulator().accept(groups.computeIfAbsent(reader.key, k -> downstream.supplier().get()), e);
+            }
+        }
+        Files.delete(file);
+        phase.records += records;
+        phase.bytes += fileBytes;
+        phase.nanos += System.nanoTime() - start;
+        emit(groups, downstream, sink);
+    }
+
+    private static <A, R> void emit(Map<String, A> groups, Collector<Employee, A, R> downstream, BiConsumer<String, R> sink) {
+        for (Map.Entry<String, A> group : groups.entrySet()) {
+            sink.accept(group.getKey(), downstream.finisher().apply(group.getValue()));
+        }
+    }
+
+    private Phase phase(String name) {
+        for (Phase phase : phases) {
+            if (phase.name.equals(name)) {
+                return phase;
+            }
+        }
+        Phase phase = new Phase(name);
+        phases.add(phase);
+        return phase;
+    }
+
+    public List<Phase> phases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    public boolean spilled() {
+        return partitionPhase != null;
+    }
+
+    // Deletes the run files that are still there (after a failure) and the temp directory
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static long heapEstimate(long records, long nameBytes) {
+        return records * RECORD_OVERHEAD_BYTES + nameBytes;
+    }
+
+    // UTF-8 length without encoding the string
+    private static int utf8Length(String s) {
+        int bytes = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                bytes += Character.isSurrogate(c) ? 1 : 2; // a pair is 2 chars and 4 bytes
+            } else if (c >= 0x80) {
+                bytes += 1;
+            }
+        }
+        return bytes;
+    }
+
+    private int partitionOf(String key, int seed) {
+        int h = (key.hashCode() ^ seed * 0x9E3779B9) * 0x85EBCA6B;
+        return (h ^ h >>> 15) & (partitions - 1);
+    }
+
+    // One run file and one write buffer per partition
+    private final class PartitionWriter {
+        final Path[] files = new Path[partitions];
+        final long[] records = new long[partitions];
+        final long[] nameBytes = new long[partitions];
+        private final FileChannel[] channels = new FileChannel[partitions];
+        private final ByteBuffer[] buffers = new ByteBuffer[partitions];
+        private final int seed;
+        private String firstKey;
+        private boolean mixedKeys;
+
+        PartitionWriter(String prefix, int seed) throws IOException {
+            this.seed = seed;
+            for (int p = 0; p < partitions; p++) {
+                files[p] = directory.resolve(prefix + "-" + p);
+                channels[p] = FileChannel.open(files[p], StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                buffers[p] = ByteBuffer.allocateDirect(writeBufferBytes);
+            }
+        }
+
+        void write(Employee e, String key) throws IOException {
+            write(e.getName(), e.getDepartment(), key, e.getSalary());
+        }
+
+        void write(String name, String department, String key, int salary) throws IOException {
+            byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+            byte[] departmentBytes = department.getBytes(StandardCharsets.UTF_8);
+            boolean keyIsDepartment = key.equals(department);
+            byte[] keyBytes = keyIsDepartment ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+            if (encodedName.length > 0xFFFF || departmentBytes.length > 0xFFFF || keyBytes.length >= KEY_IS_DEPARTMENT) {
+                throw new IllegalArgumentException("Name or department longer than 65535 bytes, or key longer than 65534");
+            }
+            int p = partitionOf(key, seed);
+            int size = 2 + encodedName.length + 2 + departmentBytes.length + 2 + keyBytes.length + 4;
+            ByteBuffer buffer = buffers[p];
+            if (buffer.remaining() < size) {
+                flush(p);
+            }
+            if (buffer.remaining() < size) {
+                // larger than the whole buffer: write this one record directly
+                buffer = ByteBuffer.allocate(size);
+            }
+            buffer.putShort((short) encodedName.length).put(encodedName)
+                .putShort((short) departmentBytes.length).put(departmentBytes)
+                .putShort((short) (keyIsDepartment ? KEY_IS_DEPARTMENT : keyBytes.length)).put(keyBytes)
+                .putInt(salary);
+            if (buffer != buffers[p]) {
+                buffer.flip();
+                writeFully(channels[p], buffer);
+            }
+            records[p]++;
+            nameBytes[p] += encodedName.length;
+            if (firstKey == null) {
+                firstKey = key;
+            } else if (!mixedKeys && !firstKey.equals(key)) {
+                mixedKeys = true;
+            }
+        }
+
+        private void flush(int p) throws IOException {
+            buffers[p].flip();
+            writeFully(channels[p], buffers[p]);
+            buffers[p].clear();
+        }
+
+        void close() throws IOException {
+            for (int p = 0; p < partitions; p++) {
+                if (channels[p].isOpen()) {
+                    flush(p);
+                    channels[p].close();
+                }
+            }
+        }
+
+        long totalRecords() {
+            long total = 0;
+            for (long r : records) {
+                total += r;
+            }
+            return total;
+        }
+
+        long totalBytes() throws IOException {
+            long total = 0;
+            for (Path file : files) {
+                total += Files.size(file);
+            }
+            return total;
+        }
+
+        // true when every record written had the same key
+        boolean singleKey() {
+            return !mixedKeys;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Sequential reader of one run file
+    private final class RecordReader implements AutoCloseable {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(readBufferBytes);
+        private byte[] scratch = new byte[256];
+        private boolean eof;
+        String name;
+        String department;
+        String key;
+        int salary;
+
+        RecordReader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip(); // empty, in read mode
+        }
+
+        boolean next() throws IOException {
+            if (!ensure(2)) {
+                return false;
+            }
+            name = readString();
+            ensure(2);
+            department = readString();
+            ensure(2);
+            if ((buffer.getShort(buffer.position()) & 0xFFFF) == KEY_IS_DEPARTMENT) {
+                buffer.getShort();
+                key = department;
+            } else {
+                key = readString();
+            }
+            ensure(4);
+            salary = buffer.getInt();
+            return true;
+        }
+
+        private String readString() throws IOException {
+            int length = buffer.getShort() & 0xFFFF;
+            ensure(length);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // makes sure `bytes` bytes are buffered; false at a clean end of file
+        private boolean ensure(int bytes) throws IOException {
+            while (buffer.remaining() < bytes) {
+                if (eof) {
+                    if (buffer.hasRemaining()) {
+                        throw new IOException("Run file ends in the middle of a record");
+                    }
+                    return false;
+                }
+                if (buffer.capacity() < bytes) {
+                    ByteBuffer larger = ByteBuffer.allocateDirect(bytes);
+                    larger.put(buffer);
+                    buffer = larger;
+                } else {
+                    buffer.compact();
+                }
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String a[]) throws IOException {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        Path tmp = Path.of(System.getProperty("java.io.tmpdir"));
+        // a tiny budget forces the small example through the spill path
+        try (ExternalGroupBy groupBy = new ExternalGroupBy(Employee::getDepartment, 200, tmp)) {
+            for (Employee e : employees) {
+                groupBy.add(e);
+            }
+            Map<String, List<String>> names = new HashMap<>();
+            groupBy.finish(Collectors.mapping(Employee::getName, Collectors.toList()), names::put);
+            System.out.println(names + " spilled: " + groupBy.spilled()); // {HR=[Alice, Charlie], IT=[Bob, David]} spilled: true
+        }
+
+        // any classifier: the downstream still sees each employee's own department after a spill
+        Map<Boolean, Map<String, List<String>>> bySalaryBand = new HashMap<>();
+        for (long memoryBudget : new long[] {200, 1 << 20}) {
+            try (ExternalGroupBy groupBy = new ExternalGroupBy(e -> e.getSalary() >= 4500 ? "high" : "low", memoryBudget, tmp)) {
+                for (Employee e : employees) {
+                    groupBy.add(e);
+                }
+                Map<String, List<String>> departments = new HashMap<>();
+                groupBy.finish(Collectors.mapping(Employee::getDepartment, Collectors.toList()), departments::put);
+                bySalaryBand.put(groupBy.spilled(), departments);
+            }
+        }
+        System.out.println(bySalaryBand.get(true) + " same as in memory: "
+            + bySalaryBand.get(true).equals(bySalaryBand.get(false))); // {high=[IT, IT], low=[HR, HR]} same as in memory: true
+
+        // Many rows, high-cardinality departments; run with a small heap, e.g. -Xmx256m
+        int rows = a.length > 0 ? Integer.parseInt(a[0]) : 10_000_000;
+        int keys = a.length > 1 ? Integer.parseInt(a[1]) : 100_000;
+        long budget = (a.length > 2 ? Long.parseLong(a[2]) : 32) << 20;
+        // a scoped dictionary, so the demo names do not stay in Department.GLOBAL after the run
+        Department.Dictionary dictionary = new Department.Dictionary(keys);
+        Department[] departments = new Department[keys];
+        for (int k = 0; k < keys; k++) {
+            departments[k] = dictionary.intern("Dept" + k);
+        }
+        long peakHeap = 0;
+        long start = System.nanoTime();
+        try (ExternalGroupBy groupBy = new ExternalGroupBy(Employee::getDepartment, budget, tmp)) {
+            for (int i = 0; i < rows; i++) {
+                groupBy.add(new Employee("Employee" + i, departments[i % keys], 2000 + i % 8000));
+                if ((i & 0xFFFF) == 0) {
+                    peakHeap = Math.max(peakHeap, usedHeap());
+                }
+            }
+            long[] groups = new long[2];
+            groupBy.finish(Collectors.toList(), (key, list) -> {
+                groups[0]++;
+                groups[1] += list.size();
+            });
+            peakHeap = Math.max(peakHeap, usedHeap());
+            System.out.printf("%,d rows in %,d groups, %d ms, budget %d MB, peak heap %d MB of max %d MB%n",
+                groups[1], groups[0], (System.nanoTime() - start) / 1_000_000, budget >> 20,
+                peakHeap >> 20, Runtime.getRuntime().maxMemory() >> 20);
+            groupBy.phases().forEach(System.out::println);
+        }
+    }
+}
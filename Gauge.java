@@ -0,0 +1,58 @@
+
+// Gauge: a metric that is a current value, not a count (queue length, open connections, heap used)
+// Two kinds:
+//   set/add - the application pushes the value; a single AtomicLong is fine because a gauge
+//             is updated far less often than a request counter is incremented
+//   of(...) - the value is pulled from a supplier each time the gauge is read, so there is
+//             nothing to update at all (e.g. Gauge.of(queue::size))
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+public class Gauge {
+    private final AtomicLong value = new AtomicLong();
+    private final LongSupplier supplier;
+
+    public Gauge() {
+        this.supplier = null;
+    }
+
+    private Gauge(LongSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    public static Gauge of(LongSupplier supplier) {
+        return new Gauge(supplier);
+    }
+
+    public void set(long newValue) {
+        checkSettable();
+        value.set(newValue);
+    }
+
+    public void add(long delta) {
+        checkSettable();
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return supplier != null ? supplier.getAsLong() : value.get();
+    }
+
+    private void checkSettable() {
+        if (supplier != null) {
+            throw new UnsupportedOperationException("Gauge reads its value from a supplier");
+        }
+    }
+
+    public static void main(String[] args) {
+        Gauge inFlight = new Gauge();
+        inFlight.add(3);
+        inFlight.add(-1);
+        System.out.println("in flight: " + inFlight.get()); // 2
+
+        Runtime runtime = Runtime.getRuntime();
+        Gauge heapUsed = Gauge.of(() -> runtime.totalMemory() - runtime.freeMemory());
+        System.out.println("heap used: " + (heapUsed.get() >> 20) + " MB");
+    }
+}
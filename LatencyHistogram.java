@@ -0,0 +1,187 @@
+
+// Histogram with one recorder per thread, merged when it is read
+// Recording a value must be as cheap as a counter increment, so every thread writes only to
+// its own bucket array: no locks and no atomic read-modify-write, just a plain add published
+// with a release store (lazySet). A reader walks all per-thread arrays and adds them up.
+// Buckets are log-linear: every power of two is split into 8 sub-buckets, so a value is
+// known to within 12.5% (values below 8 exactly), from 1 ns up to Long.MAX_VALUE.
+// Threads come and go (thread-per-task executors create one per task), so the recorder of a
+// thread that has ended is folded into one shared array and dropped. The number of recorders
+// stays around the number of live threads that record.
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    // per recorder: BUCKETS counts, then the sum and the max of all recorded values
+    private static final int SUM = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+
+    private static final class Recorder {
+        final Thread owner = Thread.currentThread();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS + 2);
+    }
+
+    // recorders of threads that may still be alive
+    private final Set<Recorder> recorders = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<AtomicLongArray> recorder = ThreadLocal.withInitial(this::register);
+
+    // guarded by `this`: totals of the threads whose recorders were folded
+    private final long[] retired = new long[BUCKETS + 2];
+    private int pruneAt = 64;
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // largest value that falls into the bucket
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private AtomicLongArray register() {
+        Recorder r = new Recorder();
+        recorders.add(r);
+        if (recorders.size() >= pruneAt) {
+            synchronized (this) {
+                if (recorders.size() >= pruneAt) {
+                    foldEndedThreads();
+                    // prune again only after the live set has doubled: amortized O(1) per new thread
+                    pruneAt = Math.max(64, 2 * recorders.size());
+                }
+            }
+        }
+        return r.buckets;
+    }
+
+    // A thread that is no longer alive has finished all its writes (isAlive() == false
+    // happens-after them), so its counts can be moved into `retired` without losing any.
+    private void foldEndedThreads() {
+        for (Iterator<Recorder> it = recorders.iterator(); it.hasNext(); ) {
+            Recorder r = it.next();
+            if (!r.owner.isAlive()) {
+                for (int i = 0; i < MAX; i++) {
+                    retired[i] += r.buckets.get(i);
+                }
+                retired[MAX] = Math.max(retired[MAX], r.buckets.get(MAX));
+                it.remove();
+            }
+        }
+    }
+
+    public void record(long value) {
+        AtomicLongArray buckets = recorder.get();
+        // only the owning thread writes these slots, so get + lazySet cannot lose an update
+        int bucket = bucket(value);
+        buckets.lazySet(bucket, buckets.get(bucket) + 1);
+        buckets.lazySet(SUM, buckets.get(SUM) + value);
+        if (value > buckets.get(MAX)) {
+            buckets.lazySet(MAX, value);
+        }
+    }
+
+    // folding and reading both hold the lock, so no recorder is counted twice or missed
+    public synchronized Snapshot snapshot() {
+        foldEndedThreads();
+        long[] counts = new long[BUCKETS];
+        System.arraycopy(retired, 0, counts, 0, BUCKETS);
+        long sum = retired[SUM];
+        long max = retired[MAX];
+        for (Recorder r : recorders) {
+            AtomicLongArray buckets = r.buckets;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += buckets.get(i);
+            }
+            sum += buckets.get(SUM);
+            max = Math.max(max, buckets.get(MAX));
+        }
+        return new Snapshot(counts, sum, max);
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        // value at the given percentile (0-100), accurate to the bucket width
+        public long percentile(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p99=%d p99.9=%d max=%d",
+                count, mean(), percentile(50), percentile(99), percentile(99.9), max);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Runnable task = () -> {
+            for (int i = 1; i <= 1000; i++) {
+                histogram.record(i * 1000L); // 1 us .. 1 ms in ns
+            }
+        };
+
+        Thread thread1 = new Thread(task);
+        Thread thread2 = new Thread(task);
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        System.out.println(histogram.snapshot()); // count=2000 mean=500500.0 p50~500000 p99~990000 max=1000000
+    }
+}
@@ -0,0 +1,89 @@
+
+// Detects virtual threads that are pinned to their carrier thread
+// A virtual thread that blocks inside a synchronized block (or a native call) cannot be
+// unmounted: it keeps its carrier platform thread blocked too ("pinned"). A few pinned tasks
+// are harmless, but with only as many carriers as CPU cores, pinning under load turns the
+// virtual executor back into a small fixed pool. The usual fix is to replace synchronized
+// with a ReentrantLock around the blocking call.
+// The JVM reports pinning as the JFR event jdk.VirtualThreadPinned. This monitor streams
+// those events in-process and keeps a count plus the stack trace of each one. Platform
+// threads are never pinned, so a monitor can be created unconditionally next to
+// TaskRunner.fromSystemProperty; in PLATFORM mode it just reports nothing.
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+public class PinningMonitor implements AutoCloseable {
+    static final String EVENT = "jdk.VirtualThreadPinned";
+
+    private final RecordingStream stream;
+    private final LongAdder pinned = new LongAdder();
+    private final List<String> reports = new CopyOnWriteArrayList<>();
+
+    // reports pinning that lasts at least `threshold`; listener gets one line per event plus its stack
+    public PinningMonitor(Duration threshold, Consumer<String> listener) {
+        this.stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, event -> {
+            pinned.increment();
+            String report = describe(event);
+            reports.add(report);
+            listener.accept(report);
+        });
+        stream.startAsync();
+    }
+
+    private static String describe(RecordedEvent event) {
+        StringBuilder report = new StringBuilder("virtual thread pinned for ")
+            .append(event.getDuration().toMillis()).append(" ms");
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                report.append(System.lineSeparator()).append("    at ")
+                    .append(frame.getMethod().getType().getName()).append('.')
+                    .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+            }
+        }
+        return report.toString();
+    }
+
+    public long pinnedCount() {
+        return pinned.sum();
+    }
+
+    public List<String> reports() {
+        return List.copyOf(reports);
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Object lock = new Object();
+        try (PinningMonitor monitor = new PinningMonitor(Duration.ofMillis(10), System.out::println)) {
+            // closing the runner waits for the task
+            try (TaskRunner runner = TaskRunner.virtual()) {
+                // sleeping while holding a monitor pins the virtual thread
+                runner.execute(() -> {
+                    synchronized (lock) {
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            Thread.sleep(1500); // the event stream delivers in batches of about a second
+            System.out.println("pinned events: " + monitor.pinnedCount()); // 1
+        }
+    }
+}
@@ -0,0 +1,327 @@
+
+// Salary index: top-K, max and percentile without scanning the list
+// stream().max(comparingInt(getSalary)) looks at every employee for every question.
+// The index keeps employees sorted by salary in a balanced search tree (a treap) in which
+// every node also stores the size of its subtree. With the sizes the tree can jump straight
+// to "the k-th highest salary" in O(log n):
+//   max            O(log n)
+//   k-th / percentile O(log n)
+//   top K          O(log n + K)
+//   insert/remove  O(log n)
+// There is one tree over all employees and one tree per department.
+
+// Treap = binary search tree on the key + heap on a random priority. The random priorities
+// keep the tree balanced on average without the bookkeeping of a red-black tree.
+
+// For one-off questions on a stream, topKCollector(k) is a Collector that keeps only the k best
+// employees in a min-heap (PriorityQueue of size k): O(n log k) instead of sorting O(n log n).
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collector;
+
+// Not thread-safe: guard it with a lock or keep one index per thread.
+public final class SalaryIndex {
+    private final SalaryTree all = new SalaryTree();
+    private final Map<String, SalaryTree> byDept = new HashMap<>();
+    // Employee has no equals/hashCode, so the index tracks the exact objects that were added.
+    // The insertion sequence breaks salary ties (earlier employee ranks higher, like Stream.max).
+    private final Map<Employee, Long> sequence = new IdentityHashMap<>();
+    private long nextSequence;
+
+    public SalaryIndex() {
+    }
+
+    public SalaryIndex(List<Employee> employees) {
+        employees.forEach(this::add);
+    }
+
+    public void add(Employee e) {
+        if (sequence.containsKey(e)) {
+            throw new IllegalArgumentException("Already indexed: " + e);
+        }
+        long seq = nextSequence++;
+        sequence.put(e, seq);
+        all.insert(e, seq);
+        byDept.computeIfAbsent(e.getDepartment(), dept -> new SalaryTree()).insert(e, seq);
+    }
+
+    public boolean remove(Employee e) {
+        Long seq = sequence.remove(e);
+        if (seq == null) {
+            return false;
+        }
+        all.remove(e.getSalary(), seq);
+        SalaryTree dept = byDept.get(e.getDepartment());
+        dept.remove(e.getSalary(), seq);
+        if (dept.size() == 0) {
+            byDept.remove(e.getDepartment());
+        }
+        return true;
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    public Employee max() {
+        return all.kthHighest(0);
+    }
+
+    public Employee max(String department) {
+        SalaryTree tree = byDept.get(department);
+        return tree == null ? null : tree.kthHighest(0);
+    }
+
+    public List<Employee> topK(int k) {
+        return all.topK(k);
+    }
+
+    public List<Employee> topK(String department, int k) {
+        SalaryTree tree = byDept.get(department);
+        return tree == null ? List.of() : tree.topK(k);
+    }
+
+    // Nearest-rank percentile: the salary that p percent of the employees earn at most (0 < p <= 100)
+    public int percentile(double p) {
+        return percentile(all, p);
+    }
+
+    public int percentile(String department, double p) {
+        SalaryTree tree = byDept.get(department);
+        if (tree == null) {
+            throw new IllegalArgumentException("Unknown department: " + department);
+        }
+        return percentile(tree, p);
+    }
+
+    private static int percentile(SalaryTree tree, double p) {
+        if (p <= 0 || p > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]: " + p);
+        }
+        if (tree.size() == 0) {
+            throw new IllegalStateException("No employees indexed");
+        }
+        int rank = (int) Math.ceil(p / 100 * tree.size()); // 1-based, lowest salary first
+        return tree.kthHighest(tree.size() - rank).getSalary();
+    }
+
+    // Order-statistic treap ordered by (salary descending, sequence ascending)
+    static final class SalaryTree {
+        static final class Node {
+            final Employee employee;
+            final int salary;
+            final long seq;
+            final int priority;
+            Node left;
+            Node right;
+            int size = 1;
+
+            Node(Employee employee, long seq) {
+                this.employee = employee;
+                this.salary = employee.getSalary();
+                this.seq = seq;
+                this.priority = ThreadLocalRandom.current().nextInt();
+            }
+        }
+
+        private Node root;
+
+        int size() {
+            return size(root);
+        }
+
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        private static void update(Node node) {
+            node.size = 1 + size(node.left) + size(node.right);
+        }
+
+        // true when (salary, seq) sorts before (otherSalary, otherSeq): higher salary first, then lower sequence
+        private static boolean before(int salary, long seq, int otherSalary, long otherSeq) {
+            return salary != otherSalary ? salary > otherSalary : seq < otherSeq;
+        }
+
+        // Splits into (keys before (salary, seq), the rest)
+        private static Node[] split(Node node, int salary, long seq) {
+            if (node == null) {
+                return new Node[2];
+            }
+            if (before(node.salary, node.seq, salary, seq)) {
+                Node[] parts = split(node.right, salary, seq);
+                node.right = parts[0];
+                update(node);
+                parts[0] = node;
+                return parts;
+            }
+            Node[] parts = split(node.left, salary, seq);
+            node.left = parts[1];
+            update(node);
+            parts[1] = node;
+            return parts;
+        }
+
+        private static Node merge(Node left, Node right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                update(left);
+                return left;
+            }
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+
+        void insert(Employee e, long seq) {
+            Node[] parts = split(root, e.getSalary(), seq);
+            root = merge(merge(parts[0], new Node(e, seq)), parts[1]);
+        }
+
+        void remove(int salary, long seq) {
+            root = remove(root, salary, seq);
+        }
+
+        private static Node remove(Node node, int salary, long seq) {
+            if (node == null) {
+                return null;
+            }
+            if (node.salary == salary && node.seq == seq) {
+                return merge(node.left, node.right);
+            }
+            if (before(salary, seq, node.salary, node.seq)) {
+                node.left = remove(node.left, salary, seq);
+            } else {
+                node.right = remove(node.right, salary, seq);
+            }
+            update(node);
+            return node;
+        }
+
+        // k = 0 is the highest salary
+        Employee kthHighest(int k) {
+            if (k < 0 || k >= size()) {
+                return null;
+            }
+            Node node = root;
+            while (true) {
+                int leftSize = size(node.left);
+                if (k < leftSize) {
+                    node = node.left;
+                } else if (k == leftSize) {
+                    return node.employee;
+                } else {
+                    k -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        // In-order walk that stops after k nodes
+        List<Employee> topK(int k) {
+            List<Employee> result = new ArrayList<>(Math.min(k, size()));
+            collect(root, k, result);
+            return result;
+        }
+
+        private static void collect(Node node, int k, List<Employee> result) {
+            if (node == null || result.size() >= k) {
+                return;
+            }
+            collect(node.left, k, result);
+            if (result.size() < k) {
+                result.add(node.employee);
+                collect(node.right, k, result);
+            }
+        }
+    }
+
+    // Bounded-heap top-K collector: highest salaries first, works with parallelStream()
+    public static Collector<Employee, ?, List<Employee>> topKCollector(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        Comparator<Employee> bySalary = Comparator.comparingInt(Employee::getSalary);
+        return Collector.of(
+            () -> new PriorityQueue<>(k + 1, bySalary),
+            (PriorityQueue<Employee> heap, Employee e) -> offer(heap, e, k),
+            (left, right) -> {
+                right.forEach(e -> offer(left, e, k));
+                return left;
+            },
+            heap -> {
+                List<Employee> result = new ArrayList<>(heap);
+                result.sort(bySalary.reversed());
+                return result;
+            });
+    }
+
+    // heap.peek() is the smallest salary kept so far; a newcomer only gets in if it beats it
+    private static void offer(PriorityQueue<Employee> heap, Employee e, int k) {
+        if (heap.size() < k) {
+            heap.add(e);
+        } else if (e.getSalary() > heap.peek().getSalary()) {
+            heap.poll();
+            heap.add(e);
+        }
+    }
+
+    public static void main(String a[]) {
+        List<Employee> employees = List.of(
+            new Employee("Alice", "HR", 3000),
+            new Employee("Bob", "IT", 5000),
+            new Employee("Charlie", "HR", 4000),
+            new Employee("David", "IT", 6000)
+        );
+        SalaryIndex index = new SalaryIndex(employees);
+        System.out.println("Highest Paid Employee: " + index.max());   // David
+        System.out.println("Top 2: " + index.topK(2));                 // David, Bob
+        System.out.println("Top HR: " + index.topK("HR", 1));          // Charlie
+        System.out.println("Median salary: " + index.percentile(50));  // 4000
+
+        index.remove(employees.get(3));
+        Employee eve = new Employee("Eve", "HR", 7000);
+        index.add(eve);
+        System.out.println("Highest Paid Employee: " + index.max());   // Eve
+        System.out.println("Highest Paid in IT: " + index.max("IT"));  // Bob
+
+        List<Employee> top2 = employees.parallelStream()
+            .collect(SalaryIndex.topKCollector(2));
+        System.out.println("Top 2 (collector): " + top2);             // David, Bob
+
+        // Index queries against full scans on a larger data set
+        java.util.Random random = new java.util.Random(7);
+        List<Employee> many = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            many.add(new Employee("E" + i, "Dept" + random.nextInt(100), random.nextInt(1_000_000)));
+        }
+        SalaryIndex big = new SalaryIndex(many);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            big.topK(10);
+        }
+        long indexNanos = (System.nanoTime() - start) / 10_000;
+        start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            many.stream().max(Comparator.comparingInt(Employee::getSalary));
+        }
+        long scanNanos = (System.nanoTime() - start) / 10;
+        System.out.println("top 10 from index: " + indexNanos + " ns, max by full scan: " + scanNanos + " ns");
+        System.out.println("index agrees with scan: "
+            + (big.max() == Collections.max(many, Comparator.comparingInt(Employee::getSalary))));
+    }
+}
@@ -0,0 +1,175 @@
+
+// Per-department salary kernels over primitive columns
+// summingInt, averagingInt and max(comparingInt(getSalary)) in Employee.main all reduce one
+// int column, grouped by department. Given the columns as int[] (see EmployeeTable) this
+// computes sum, count, min and max of every department in one kernel call.
+//   vector - VectorSalaryKernel (SIMD), used when the jdk.incubator.vector module is loaded
+//            and the number of departments is small (it makes one masked pass per department)
+//   scalar - a plain loop, used otherwise or with -Dsalary.kernels.scalar=true
+
+// Run the comparison: java --add-modules jdk.incubator.vector SalaryKernels [rows] [departments]
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+public class SalaryKernels {
+    static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+        && !Boolean.getBoolean("salary.kernels.scalar");
+    // one masked pass per department: measured on AVX-512 the vector kernel is ~3x faster with
+    // 2 departments, ~1.5x with 4 and slower than the scalar loop from about 6 departments on
+    static final int MAX_VECTOR_DEPARTMENTS = 4;
+
+    // Per-department results, indexed by department code
+    public static final class Stats {
+        private final long[] sums;
+        private final long[] counts;
+        private final int[] mins;
+        private final int[] maxes;
+
+        Stats(int departments) {
+            sums = new long[departments];
+            counts = new long[departments];
+            mins = new int[departments];
+            maxes = new int[departments];
+            Arrays.fill(mins, Integer.MAX_VALUE);
+            Arrays.fill(maxes, Integer.MIN_VALUE);
+        }
+
+        void add(int dept, long sum, long count, int min, int max) {
+            sums[dept] += sum;
+            counts[dept] += count;
+            mins[dept] = Math.min(mins[dept], min);
+            maxes[dept] = Math.max(maxes[dept], max);
+        }
+
+        public int departmentCount() {
+            return sums.length;
+        }
+
+        public long sum(int dept) {
+            return sums[dept];
+        }
+
+        public long count(int dept) {
+            return counts[dept];
+        }
+
+        public int min(int dept) {
+            return mins[dept];
+        }
+
+        public int max(int dept) {
+            return maxes[dept];
+        }
+
+        public double average(int dept) {
+            return counts[dept] == 0 ? 0.0 : (double) sums[dept] / counts[dept];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stats)) {
+                return false;
+            }
+            Stats other = (Stats) o;
+            return Arrays.equals(sums, other.sums) && Arrays.equals(counts, other.counts)
+                && Arrays.equals(mins, other.mins) && Arrays.equals(maxes, other.maxes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(sums) * 31 + Arrays.hashCode(counts);
+        }
+    }
+
+    public static Stats aggregate(EmployeeTable table) {
+        return aggregate(table.salaryColumn(), table.deptColumn(), table.size(), table.departmentCount());
+    }
+
+    // deptCodes must be in [0, departments)
+    public static Stats aggregate(int[] salaries, int[] deptCodes, int length, int departments) {
+        if (VECTOR_AVAILABLE && departments <= MAX_VECTOR_DEPARTMENTS) {
+            return vector(salaries, deptCodes, length, departments);
+        }
+        return scalar(salaries, deptCodes, length, departments);
+    }
+
+    static Stats vector(int[] salaries, int[] deptCodes, int length, int departments) {
+        Stats stats = new Stats(departments);
+        VectorSalaryKernel.aggregate(salaries, deptCodes, length, stats);
+        return stats;
+    }
+
+    static Stats scalar(int[] salaries, int[] deptCodes, int length, int departments) {
+        long[] sums = new long[departments];
+        long[] counts = new long[departments];
+        int[] mins = new int[departments];
+        int[] maxes = new int[departments];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        Arrays.fill(maxes, Integer.MIN_VALUE);
+        for (int i = 0; i < length; i++) {
+            int d = deptCodes[i];
+            int salary = salaries[i];
+            sums[d] += salary;
+            counts[d]++;
+            mins[d] = Math.min(mins[d], salary);
+            maxes[d] = Math.max(maxes[d], salary);
+        }
+        Stats stats = new Stats(departments);
+        for (int d = 0; d < departments; d++) {
+            if (counts[d] > 0) {
+                stats.add(d, sums[d], counts[d], mins[d], maxes[d]);
+            }
+        }
+        return stats;
+    }
+
+    public static void main(String a[]) throws IOException {
+        int rows = a.length > 0 ? Integer.parseInt(a[0]) : 10_000_000;
+        int departments = a.length > 1 ? Integer.parseInt(a[1]) : 4;
+        SplittableRandom random = new SplittableRandom(11);
+        List<Employee> employees = new ArrayList<>(rows);
+        EmployeeTable table = new EmployeeTable(rows);
+        for (int i = 0; i < rows; i++) {
+            String dept = "Dept" + random.nextInt(departments);
+            int salary = 2000 + random.nextInt(8000);
+            employees.add(new Employee("E" + i, dept, salary));
+            table.add("E" + i, dept, salary);
+        }
+        int[] salaries = table.salaryColumn();
+        int[] codes = table.deptColumn();
+        int deptCount = table.departmentCount();
+
+        Stats scalar = scalar(salaries, codes, rows, deptCount);
+        if (VECTOR_AVAILABLE) {
+            System.out.println("vector kernel agrees with scalar: " + scalar.equals(vector(salaries, codes, rows, deptCount)));
+        } else {
+            System.out.println("jdk.incubator.vector not loaded, only the scalar kernel is measured");
+        }
+
+        Bench bench = new Bench(3, 5);
+        Map<String, Object> params = Bench.params("rows", rows, "departments", deptCount);
+        bench.run("collectors", params, rows, () -> {
+            Bench.consume(employees.stream().collect(
+                Collectors.groupingBy(Employee::getDepartment, Collectors.summingInt(Employee::getSalary))));
+            Bench.consume(employees.stream().collect(
+                Collectors.groupingBy(Employee::getDepartment, Collectors.averagingInt(Employee::getSalary))));
+            Bench.consume(employees.stream().collect(
+                Collectors.groupingBy(Employee::getDepartment, Collectors.maxBy(Comparator.comparingInt(Employee::getSalary)))));
+        });
+        bench.run("scalar kernel", params, rows, () -> Bench.consume(scalar(salaries, codes, rows, deptCount)));
+        if (VECTOR_AVAILABLE) {
+            bench.run("vector kernel", params, rows, () -> Bench.consume(vector(salaries, codes, rows, deptCount)));
+        }
+        if (a.length > 2) {
+            bench.writeJson(Path.of(a[2]));
+        }
+    }
+}
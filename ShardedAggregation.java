@@ -0,0 +1,209 @@
+
+// Asynchronous per-department aggregation over independently sourced shards
+// Built from the CompletableFuture examples in Java8Notes: every shard is loaded and
+// collected on its own task, and the partial maps are merged with thenCombine:
+//   future1.thenCombine(future2, Integer::sum)   ->   left.thenCombine(right, merge maps)
+// The combines form a tree, so two partial results are merged as soon as both are there,
+// and the total latency is that of the slowest shard instead of the sum of all shards.
+//   parallelism   - shards run on a dedicated pool of this many threads (not the common
+//                   ForkJoinPool), which also limits how many sources are read at once
+//   shardTimeout  - counted from the moment the shard starts running; a shard that takes
+//                   longer is interrupted and reported as failed
+//   partial results - a failed or timed-out shard does not fail the whole aggregation; the
+//                   result contains the shards that succeeded and names the ones that did not
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+public class ShardedAggregation implements AutoCloseable {
+    private final ExecutorService executor;
+    private final Duration shardTimeout;
+
+    // One source of employees, e.g. a file, a database partition or a remote service
+    public static final class Shard {
+        final String name;
+        final Supplier<? extends List<Employee>> source;
+
+        private Shard(String name, Supplier<? extends List<Employee>> source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        public static Shard of(String name, Supplier<? extends List<Employee>> source) {
+            return new Shard(name, source);
+        }
+    }
+
+    // Merged values of the shards that succeeded, plus the failure of every shard that did not
+    public static final class Result<V> {
+        private final Map<String, V> values;
+        private final Map<String, Throwable> failures;
+
+        Result(Map<String, V> values, Map<String, Throwable> failures) {
+            this.values = values;
+            this.failures = failures;
+        }
+
+        public Map<String, V> values() {
+            return Collections.unmodifiableMap(values);
+        }
+
+        public Map<String, Throwable> failures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        Result<V> merge(Result<V> other, BinaryOperator<V> mergeValues) {
+            Map<String, V> mergedValues = new LinkedHashMap<>(values);
+            other.values.forEach((dept, value) -> mergedValues.merge(dept, value, mergeValues));
+            Map<String, Throwable> mergedFailures = new LinkedHashMap<>(failures);
+            mergedFailures.putAll(other.failures);
+            return new Result<>(mergedValues, mergedFailures);
+        }
+
+        @Override
+        public String toString() {
+            return values + (failures.isEmpty() ? "" : " failed shards: " + failures.keySet());
+        }
+    }
+
+    public ShardedAggregation(int parallelism, Duration shardTimeout) {
+        AtomicInteger number = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "shard-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shardTimeout = shardTimeout;
+    }
+
+    // Runs `collector` on every shard and merges the per-department maps with mergeValues,
+    // e.g. aggregate(shards, groupingBy(getDepartment, summingInt(getSalary)), Integer::sum).
+    // The returned future never completes exceptionally: failures end up in Result.failures(),
+    // also the RejectedExecutionException of every shard when the aggregation is already closed.
+    public <V> CompletableFuture<Result<V>> aggregate(List<Shard> shards,
+            Collector<Employee, ?, Map<String, V>> collector, BinaryOperator<V> mergeValues) {
+        List<CompletableFuture<Result<V>>> partials = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            partials.add(collectShard(shard, collector));
+        }
+        return combine(partials, 0, partials.size(), mergeValues);
+    }
+
+    private <V> CompletableFuture<Result<V>> collectShard(Shard shard, Collector<Employee, ?, Map<String, V>> collector) {
+        CompletableFuture<Map<String, V>> future = new CompletableFuture<>();
+        // submitted as a plain task instead of supplyAsync so a timed-out shard can be interrupted
+        Future<?> task = submit(future, () -> {
+            future.orTimeout(shardTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            try {
+                future.complete(shard.source.get().stream().collect(collector));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future
+            .whenComplete((values, failure) -> {
+                if (failure instanceof TimeoutException) {
+                    task.cancel(true);
+                }
+            })
+            .handle((values, failure) -> failure == null
+                ? new Result<>(values, Map.of())
+                : new Result<>(Map.of(), Map.of(shard.name,
+                    failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure)));
+    }
+
+    // A closed pool rejects the task: the shard fails like any other instead of aggregate()
+    // throwing. The returned future is only used to cancel the task, so for a rejected task it
+    // is the already failed shard future, where cancel() does nothing.
+    private Future<?> submit(CompletableFuture<?> shardFuture, Runnable task) {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            shardFuture.completeExceptionally(e);
+            return shardFuture;
+        }
+    }
+
+    // combines partials[from, to) as a balanced tree of thenCombine calls
+    private static <V> CompletableFuture<Result<V>> combine(List<CompletableFuture<Result<V>>> partials,
+            int from, int to, BinaryOperator<V> mergeValues) {
+        if (to - from == 0) {
+            return CompletableFuture.completedFuture(new Result<>(Map.of(), Map.of()));
+        }
+        if (to - from == 1) {
+            return partials.get(from);
+        }
+        int middle = (from + to) >>> 1;
+        return combine(partials, from, middle, mergeValues)
+            .thenCombine(combine(partials, middle, to, mergeValues), (left, right) -> left.merge(right, mergeValues));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static Supplier<List<Employee>> slowSource(long millis, List<Employee> employees) {
+        return () -> {
+            try {
+                Thread.sleep(millis); // e.g. a remote call
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            }
+            return employees;
+        };
+    }
+
+    public static void main(String[] args) {
+        List<Shard> shards = List.of(
+            Shard.of("eu", slowSource(300, List.of(new Employee("Alice", "HR", 3000), new Employee("Bob", "IT", 5000)))),
+            Shard.of("us", slowSource(200, List.of(new Employee("Charlie", "HR", 4000)))),
+            Shard.of("apac", slowSource(100, List.of(new Employee("David", "IT", 6000)))));
+
+        try (ShardedAggregation aggregation = new ShardedAggregation(4, Duration.ofSeconds(1))) {
+            long start = System.nanoTime();
+            Result<Integer> totals = aggregation.aggregate(shards,
+                Collectors.groupingBy(Employee::getDepartment, Collectors.summingInt(Employee::getSalary)),
+                Integer::sum).join();
+            System.out.println(totals + " in " + (System.nanoTime() - start) / 1_000_000 + " ms"); // {HR=7000, IT=11000} in ~300 ms, not 600
+
+            // one shard is down, one is too slow: the others still answer
+            List<Shard> unreliable = new ArrayList<>(shards);
+            unreliable.add(Shard.of("down", () -> { throw new IllegalStateException("connection refused"); }));
+            unreliable.add(Shard.of("stuck", slowSource(60_000, List.of(new Employee("Eve", "IT", 9000)))));
+            start = System.nanoTime();
+            Result<Long> counts = aggregation.aggregate(unreliable,
+                Collectors.groupingBy(Employee::getDepartment, Collectors.counting()), Long::sum).join();
+            System.out.println(counts + " in " + (System.nanoTime() - start) / 1_000_000 + " ms"); // {HR=2, IT=2} failed shards: [down, stuck] in ~1000 ms
+            counts.failures().forEach((shard, failure) -> System.out.println("  " + shard + ": " + failure));
+        }
+
+        // after close() every shard is reported as rejected, aggregate() itself does not throw
+        ShardedAggregation closed = new ShardedAggregation(1, Duration.ofSeconds(1));
+        closed.close();
+        System.out.println(closed.aggregate(shards,
+            Collectors.groupingBy(Employee::getDepartment, Collectors.counting()), Long::sum).join()); // {} failed shards: [eu, us, apac]
+    }
+}
@@ -0,0 +1,159 @@
+
+// Striped counter for hot metrics
+// ThreadSafeCounter (synchronized), AtomicCounter (AtomicInteger) and ReentrantLockExample in
+// Notes.Java all update ONE memory location. With many threads every increment has to take
+// that cache line away from the core that changed it last, so the threads queue up behind
+// each other and adding threads makes the counter slower, not faster.
+// A striped counter spreads the count over several cells; each thread adds to "its" cell and
+// a read adds the cells up. Threads on different cells never touch the same cache line.
+//   probe   - a per-thread hash picks the cell. When a CAS fails (another thread is on the
+//             same cell) the thread rehashes its probe and keeps the new cell for later adds,
+//             like LongAdder, so two threads that collided do not keep colliding.
+//   padding - each cell sits on its own 128 byte block (two cache lines, because the CPU
+//             prefetches lines in pairs). Without it neighbouring cells share a cache line
+//             and the threads still fight over it ("false sharing").
+//   approximate() - cheap read: the sum computed at most `refreshNanos` ago
+//   sum()         - adds the cells one after another, not an atomic snapshot: increments that
+//                   run during the call may or may not be included. Never delays a writer.
+//   exactSum()    - snapshot read: the value the counter had at one instant. It locks the cells
+//                   one by one, adds them up and unlocks them, so writers pause for the length
+//                   of one walk over the cells. For reconciliation and tests, not hot paths.
+//   sumThenReset() - interval read for metrics: no increment is lost or counted twice across
+//                   intervals, though one running during the call can land in either interval
+// A cell holds its count shifted left by one; the low bit is the lock of exactSum(). add()
+// only CASes an unlocked value, so a locked cell cannot change until it is unlocked.
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class StripedCounter {
+    // 16 longs = 128 bytes between two cells
+    private static final int PAD = 16;
+    private static final long DEFAULT_REFRESH_NANOS = 1_000_000; // 1 ms
+    private static final long LOCKED = 1;
+    // per-thread cell hash, shared by all counters (never 0, xorshift needs a non-zero state)
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(
+        () -> new int[] {(int) (Thread.currentThread().threadId() * 0x9E3779B9L >>> 16) | 1});
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    private final long refreshNanos;
+    private volatile long cachedSum;
+    private volatile long cachedAt = Long.MIN_VALUE / 2;
+    private final Object snapshotLock = new Object();
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_REFRESH_NANOS);
+    }
+
+    // stripes is rounded up to a power of two
+    public StripedCounter(int stripes, long refreshNanos) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.cells = new AtomicLongArray(size * PAD);
+        this.mask = size - 1;
+        this.refreshNanos = refreshNanos;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        int[] probe = PROBE.get();
+        int h = probe[0];
+        while (true) {
+            int index = (h & mask) * PAD;
+            long current = cells.get(index);
+            if ((current & LOCKED) != 0) {
+                // exactSum() is reading: wait for the unlock, this is not contention on the cell
+                Thread.onSpinWait();
+                continue;
+            }
+            if (cells.compareAndSet(index, current, current + (delta << 1))) {
+                return;
+            }
+            // another thread shares this cell right now: move this thread to another cell for good
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            probe[0] = h;
+        }
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PAD) {
+            sum += cells.get(i) >> 1;
+        }
+        return sum;
+    }
+
+    public long exactSum() {
+        synchronized (snapshotLock) {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += PAD) {
+                sum += lock(i) >> 1;
+            }
+            // every cell has been locked at once: sum is the value at this instant
+            for (int i = 0; i < cells.length(); i += PAD) {
+                cells.set(i, cells.get(i) & ~LOCKED);
+            }
+            return sum;
+        }
+    }
+
+    // sets the lock bit of a cell once the add running on it is done; returns the locked value
+    private long lock(int index) {
+        while (true) {
+            long current = cells.get(index);
+            if (cells.compareAndSet(index, current, current | LOCKED)) {
+                return current;
+            }
+        }
+    }
+
+    public long approximate() {
+        long now = System.nanoTime();
+        if (now - cachedAt < refreshNanos) {
+            return cachedSum;
+        }
+        long sum = sum();
+        cachedSum = sum;
+        cachedAt = now;
+        return sum;
+    }
+
+    public long sumThenReset() {
+        synchronized (snapshotLock) {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += PAD) {
+                sum += cells.getAndSet(i, 0) >> 1;
+            }
+            return sum;
+        }
+    }
+
+    public int stripes() {
+        return mask + 1;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        StripedCounter counter = new StripedCounter();
+
+        Runnable task = () -> {
+            for (int i = 0; i < 1000; i++) {
+                counter.increment();
+            }
+        };
+
+        Thread thread1 = new Thread(task);
+        Thread thread2 = new Thread(task);
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        System.out.println("Final counter value: " + counter.exactSum()); // 2000
+        System.out.println("Approximate value: " + counter.approximate());
+        System.out.println("Interval value: " + counter.sumThenReset() + ", after reset: " + counter.sum()); // 2000, 0
+    }
+}
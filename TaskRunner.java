@@ -0,0 +1,199 @@
+
+// Task execution with a switch between platform threads and virtual threads
+// ExecutorExample and ThreadPoolExample in Notes.Java run tasks on a fixed pool of platform
+// (operating system) threads. Every platform thread reserves its own native stack, so a pool
+// is limited to a few thousand threads, and a task that waits for I/O keeps its thread busy
+// while doing nothing. Fan-out over 100K concurrent I/O calls needs a different model:
+//   PLATFORM - fixed pool of platform threads, right for CPU-bound work
+//   VIRTUAL  - a new virtual thread per task. A virtual thread is a small heap object;
+//              while it blocks on I/O or sleep it is unmounted and its carrier platform
+//              thread runs other virtual threads, so 100K waiting tasks are cheap.
+// Pick the mode with -Dtasks.mode=PLATFORM|VIRTUAL and use TaskRunner.fromSystemProperty.
+
+// Structured fan-out: forkJoinAll and firstSuccess start a group of tasks and, whatever the
+// outcome, cancel every unfinished task of the group before they return or throw.
+//   forkJoinAll  - all results in task order; the first failure cancels the rest
+//   firstSuccess - the first successful result; the others are cancelled right away
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TaskRunner implements AutoCloseable {
+    public enum Mode { PLATFORM, VIRTUAL }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+
+    private TaskRunner(Mode mode, ExecutorService executor) {
+        this.mode = mode;
+        this.executor = executor;
+    }
+
+    public static TaskRunner platform(int threads) {
+        AtomicInteger number = new AtomicInteger();
+        return new TaskRunner(Mode.PLATFORM, Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "task-platform-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public static TaskRunner virtual() {
+        return new TaskRunner(Mode.VIRTUAL, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public static TaskRunner of(Mode mode, int platformThreads) {
+        return mode == Mode.VIRTUAL ? virtual() : platform(platformThreads);
+    }
+
+    // mode from -Dtasks.mode, PLATFORM when not set
+    public static TaskRunner fromSystemProperty(int platformThreads) {
+        return of(Mode.valueOf(System.getProperty("tasks.mode", "PLATFORM").toUpperCase(Locale.ROOT)), platformThreads);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    // Runs all tasks and returns their results in task order. If a task fails, the others are
+    // cancelled (interrupted) and its exception is thrown as ExecutionException. If the
+    // timeout passes first, all unfinished tasks are cancelled and TimeoutException is thrown.
+    public <T> List<T> forkJoinAll(Collection<? extends Callable<T>> tasks, Duration timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(completion.submit(task));
+            }
+            long deadline = System.nanoTime() + timeout.toNanos();
+            for (int done = 0; done < futures.size(); done++) {
+                Future<T> finished = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (finished == null) {
+                    throw new TimeoutException((futures.size() - done) + " of " + futures.size() + " tasks not finished after " + timeout);
+                }
+                finished.get(); // throws the first failure
+            }
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            cancelAll(futures);
+        }
+    }
+
+    // Returns the result of the first task that succeeds and cancels the others. Throws
+    // ExecutionException (with the other failures suppressed) when every task fails.
+    public <T> T firstSuccess(Collection<? extends Callable<T>> tasks, Duration timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("No tasks");
+        }
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(completion.submit(task));
+            }
+            long deadline = System.nanoTime() + timeout.toNanos();
+            ExecutionException failure = null;
+            for (int done = 0; done < futures.size(); done++) {
+                Future<T> finished = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (finished == null) {
+                    throw new TimeoutException("No task succeeded within " + timeout);
+                }
+                try {
+                    return finished.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            throw failure;
+        } finally {
+            cancelAll(futures);
+        }
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    // Waits for submitted tasks to finish, like ExecutorService.close()
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+                // keep waiting
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (TaskRunner runner = fromSystemProperty(3)) {
+            for (int i = 1; i <= 5; i++) {
+                int task = i;
+                runner.execute(() -> System.out.println("Executing Task " + task + " by " + Thread.currentThread()));
+            }
+
+            // fan-out: three "remote calls", results in task order
+            List<Callable<String>> calls = List.of(
+                () -> { Thread.sleep(30); return "HR"; },
+                () -> { Thread.sleep(10); return "IT"; },
+                () -> { Thread.sleep(20); return "Sales"; });
+            System.out.println(runner.forkJoinAll(calls, Duration.ofSeconds(1))); // [HR, IT, Sales]
+
+            // a failing call cancels the slow one instead of waiting for it
+            List<Callable<String>> failing = List.of(
+                () -> { Thread.sleep(10_000); return "slow"; },
+                () -> { throw new IllegalStateException("service down"); });
+            long start = System.nanoTime();
+            try {
+                runner.forkJoinAll(failing, Duration.ofSeconds(30));
+            } catch (ExecutionException e) {
+                System.out.println("failed after " + (System.nanoTime() - start) / 1_000_000 + " ms: " + e.getCause().getMessage());
+            }
+
+            // hedged request: fastest replica wins
+            List<Callable<String>> replicas = List.of(
+                () -> { Thread.sleep(50); return "replica-1"; },
+                () -> { Thread.sleep(5); return "replica-2"; });
+            System.out.println(runner.firstSuccess(replicas, Duration.ofSeconds(1))); // replica-2
+        }
+    }
+}
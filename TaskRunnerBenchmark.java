@@ -0,0 +1,119 @@
+
+// Throughput and memory of TaskRunner's PLATFORM and VIRTUAL modes for I/O-bound fan-out
+// Every task simulates a remote call by blocking for `ioMillis` (Thread.sleep).
+//   tasks/sec        - forkJoinAll over `tasks` such calls. A pool of `poolThreads` platform
+//                      threads can only have that many calls in flight; virtual threads
+//                      have all of them in flight at once.
+//   bytes/in-flight  - `inFlight` tasks are started and kept blocked, then heap and process
+//                      resident memory (RSS, includes the native thread stacks; Linux only)
+//                      are compared with the idle state. Platform mode uses a pool as large
+//                      as `inFlight` here, because that is what it takes to have them all in flight.
+
+// Usage: java TaskRunnerBenchmark [tasks] [ioMillis] [poolThreads] [inFlight] [output.json]
+//   java TaskRunnerBenchmark 100000 10 200 10000 tasks-bench.json
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+public class TaskRunnerBenchmark {
+
+    static List<Callable<Integer>> ioTasks(int count, long ioMillis) {
+        List<Callable<Integer>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = i;
+            tasks.add(() -> {
+                Thread.sleep(ioMillis);
+                return id;
+            });
+        }
+        return tasks;
+    }
+
+    static void throughput(Bench bench, TaskRunner.Mode mode, int tasks, long ioMillis, int poolThreads) {
+        List<Callable<Integer>> calls = ioTasks(tasks, ioMillis);
+        try (TaskRunner runner = TaskRunner.of(mode, poolThreads)) {
+            Map<String, Object> params = Bench.params("mode", mode, "tasks", tasks, "ioMillis", ioMillis,
+                "poolThreads", mode == TaskRunner.Mode.PLATFORM ? poolThreads : "-");
+            Bench.Result result = bench.run("fan-out", params, tasks, () -> {
+                try {
+                    Bench.consume(runner.forkJoinAll(calls, Duration.ofMinutes(10)));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            System.out.printf("  %s: %,.0f tasks/sec%n", mode, result.opsPerSecond());
+        }
+    }
+
+    static void memory(TaskRunner.Mode mode, int inFlight) throws InterruptedException {
+        try (TaskRunner runner = TaskRunner.of(mode, inFlight)) {
+            long heapBefore = usedHeap();
+            long rssBefore = residentBytes();
+            CountDownLatch started = new CountDownLatch(inFlight);
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < inFlight; i++) {
+                runner.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            started.await();
+            long heap = usedHeap() - heapBefore;
+            long rss = residentBytes() - rssBefore;
+            release.countDown();
+            System.out.printf("  %s: %,d tasks in flight, heap %,d bytes/task, rss %s%n", mode, inFlight,
+                heap / inFlight, rssBefore < 0 ? "n/a" : String.format("%,d bytes/task", rss / inFlight));
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // resident set size of this process from /proc, -1 where that is not available
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    public static void main(String a[]) throws IOException, InterruptedException {
+        int tasks = a.length > 0 ? Integer.parseInt(a[0]) : 100_000;
+        long ioMillis = a.length > 1 ? Long.parseLong(a[1]) : 10;
+        int poolThreads = a.length > 2 ? Integer.parseInt(a[2]) : 200;
+        int inFlight = a.length > 3 ? Integer.parseInt(a[3]) : 10_000;
+
+        Bench bench = new Bench(1, 3);
+        for (TaskRunner.Mode mode : TaskRunner.Mode.values()) {
+            throughput(bench, mode, tasks, ioMillis, poolThreads);
+        }
+        for (TaskRunner.Mode mode : TaskRunner.Mode.values()) {
+            memory(mode, inFlight);
+        }
+        if (a.length > 4) {
+            bench.writeJson(Path.of(a[4]));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+
+// SIMD version of the per-department salary kernel (Vector API, incubating since JDK 16, still in JDK 21)
+// SIMD = Single Instruction, Multiple Data: one CPU instruction works on a whole vector of
+// values (8 ints with AVX2, 16 with AVX-512). IntVector.fromArray loads a vector of salaries,
+// eq() compares a whole vector of department codes at once and gives a mask (one bit per
+// lane), and blend() keeps only the lanes of the department being aggregated.
+
+// Do not call this class directly: SalaryKernels only loads it when the
+// jdk.incubator.vector module is present. Compile and run with --add-modules jdk.incubator.vector
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorSalaryKernel {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    // 4096 rows = 32 KB of salaries and codes, stays in L1/L2 while every department passes over it
+    private static final int BLOCK = 4096;
+
+    private VectorSalaryKernel() {
+    }
+
+    static void aggregate(int[] salaries, int[] deptCodes, int length, SalaryKernels.Stats stats) {
+        int deptCount = stats.departmentCount();
+        IntVector zero = IntVector.zero(INTS);
+        IntVector maxValue = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        IntVector minValue = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+
+        for (int base = 0; base < length; base += BLOCK) {
+            int end = Math.min(length, base + BLOCK);
+            int vectorEnd = base + INTS.loopBound(end - base);
+            for (int d = 0; d < deptCount; d++) {
+                IntVector dept = IntVector.broadcast(INTS, d);
+                LongVector sum = LongVector.zero(LONGS);
+                IntVector min = maxValue;
+                IntVector max = minValue;
+                long count = 0;
+                // no early exit for vectors without a match: with a branch in the loop the JDK 17
+                // JIT no longer keeps the vectors in registers and boxes them on the heap
+                for (int i = base; i < vectorEnd; i += INTS.length()) {
+                    VectorMask<Integer> inDept = IntVector.fromArray(INTS, deptCodes, i).eq(dept);
+                    IntVector salary = IntVector.fromArray(INTS, salaries, i);
+                    // widen to longs before adding, so the sum cannot overflow
+                    IntVector selected = zero.blend(salary, inDept);
+                    sum = sum.add((LongVector) selected.convertShape(VectorOperators.I2L, LONGS, 0))
+                        .add((LongVector) selected.convertShape(VectorOperators.I2L, LONGS, 1));
+                    min = min.min(maxValue.blend(salary, inDept));
+                    max = max.max(minValue.blend(salary, inDept));
+                    count += inDept.trueCount();
+                }
+                if (count > 0) {
+                    stats.add(d, sum.reduceLanes(VectorOperators.ADD), count,
+                        min.reduceLanes(VectorOperators.MIN), max.reduceLanes(VectorOperators.MAX));
+                }
+            }
+            // rows that do not fill a whole vector
+            for (int i = vectorEnd; i < end; i++) {
+                stats.add(deptCodes[i], salaries[i], 1, salaries[i], salaries[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CacheBenchmark under JMH: BoundedCache against the plain ThreadSafeCache, Zipfian keys.
+// All threads share one cache; each thread replays its own precomputed key sequence.
+// Thread count: @Threads below or -t on the command line. Score is throughput of all threads.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class CacheJmhBenchmark {
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"ThreadSafeCache", "BoundedCache"})
+        String cache;
+
+        @Param("100000")
+        int keys;
+
+        @Param("10000")
+        int capacity;
+
+        @Param({"100", "95", "75"})
+        int readPercent;
+
+        IntFunction<Object> get;
+        IntFunction<Object> put;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Map<String, IntFunction<Object>> ops = RootClasses.call("CacheBenchmark", "operations", cache, keys, capacity);
+            get = ops.get("get");
+            put = ops.get("put");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private static int seeds;
+
+        int[] sequence;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(Shared shared) {
+            int seed;
+            synchronized (Keys.class) {
+                seed = 42 + seeds++;
+            }
+            sequence = RootClasses.call("CacheBenchmark", "zipfian", shared.keys, 0.99, SEQUENCE_LENGTH, (long) seed);
+        }
+    }
+
+    @Benchmark
+    public Object operation(Shared shared, Keys keys) {
+        int i = keys.next++ & (SEQUENCE_LENGTH - 1);
+        int key = keys.sequence[i];
+        return i % 100 < shared.readPercent ? shared.get.apply(key) : shared.put.apply(key);
+    }
+}
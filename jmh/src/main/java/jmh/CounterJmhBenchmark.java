@@ -0,0 +1,43 @@
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CounterBenchmark under JMH: every thread increments one shared counter.
+// Compare thread counts with -t (1, 2, 4, ... up to the core count); score is ns per increment
+// per thread, so a counter that scales keeps a flat score as threads are added.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class CounterJmhBenchmark {
+
+    @Param({"synchronized", "atomic", "lock", "striped"})
+    String counter;
+
+    private Runnable increment;
+
+    @Setup
+    public void setup() {
+        increment = RootClasses.call("CounterBenchmark", "incrementer", counter);
+    }
+
+    @Benchmark
+    public void increment() {
+        increment.run();
+    }
+}
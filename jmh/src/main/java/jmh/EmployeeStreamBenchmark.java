@@ -0,0 +1,64 @@
+package jmh;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The operations of EmployeeBenchmark (stream / parallel / loop) under JMH.
+// Score is time per call, i.e. for all `size` employees; divide by size for ns per employee.
+// Allocation per call is in gc.alloc.rate.norm (gradle :jmh:jmh runs with -prof gc).
+// size and departments are one parameter, "size/departments", so that only the combinations
+// with departments <= size are run, the same ones as EmployeeBenchmark.main.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EmployeeStreamBenchmark {
+
+    @Param({"1000/2", "1000/100", "100000/2", "100000/100", "100000/100000",
+        "1000000/2", "1000000/100", "1000000/100000"})
+    String population;
+
+    @Param({"groupingBy", "summingInt", "averagingInt", "max", "skip+findFirst", "filter+findFirst", "flatMap"})
+    String operation;
+
+    @Param({"stream", "parallel", "loop"})
+    String mode;
+
+    private Supplier<Object> body;
+
+    @Setup
+    public void setup() {
+        String[] sizeAndDepartments = population.split("/");
+        int size = Integer.parseInt(sizeAndDepartments[0]);
+        int departments = Integer.parseInt(sizeAndDepartments[1]);
+        if (departments > size) {
+            throw new IllegalArgumentException("More departments than employees: " + population);
+        }
+        List<?> employees = RootClasses.call("EmployeeBenchmark", "employees", size, departments);
+        Map<String, Supplier<Object>> ops = RootClasses.call("EmployeeBenchmark", "operations", employees, departments);
+        body = ops.get(operation + "/" + mode);
+        if (body == null) {
+            throw new IllegalArgumentException("Unknown operation " + operation + "/" + mode);
+        }
+    }
+
+    @Benchmark
+    public Object run() {
+        return body.get();
+    }
+}
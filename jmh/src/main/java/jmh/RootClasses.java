@@ -0,0 +1,31 @@
+package jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// The benchmarked classes live in the default package, which Java code in a named package
+// cannot import, and JMH refuses benchmarks in the default package. So the benchmarks call one
+// static factory per setup through reflection. The factory returns plain JDK types (Supplier,
+// IntSupplier, ...), which the benchmark methods then call directly without reflection.
+final class RootClasses {
+
+    private RootClasses() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T call(String className, String method, Object... args) {
+        try {
+            for (Method m : Class.forName(className).getDeclaredMethods()) {
+                if (m.getName().equals(method) && m.getParameterCount() == args.length) {
+                    m.setAccessible(true);
+                    return (T) m.invoke(null, args);
+                }
+            }
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(className + "." + method + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        throw new IllegalArgumentException("No method " + className + "." + method + " with " + args.length + " parameters");
+    }
+}